@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.benchmark;
+
+import com.github.paradam.infinitepager.core.PageTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the {@link PageTable} the state adapters use to index their pages by position, when
+ * every page is given a new position, against the number of pages held. Only the index is
+ * measured, not <code>notifyDataSetChanged()</code> itself.</p>
+ *
+ * <p>Each invocation looks up the old position of every page and moves the pages into a new table,
+ * either one position along as if a page had been inserted at the start, or in reverse order. The
+ * table finds each position in constant time, so while the pages keep their order each page is
+ * appended and the whole pass is linear in the number of pages. Once reversed each page is
+ * inserted before the pages already moved, shifting the table every time, and the pass becomes
+ * quadratic. The <tt>ArrayList</tt> baseline searches the list for every page and is quadratic
+ * either way.</p>
+ *
+ * @author Adam Parr
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+public class DataSetChangeBenchmark {
+    /**
+     * The number of pages held by the adapter.
+     */
+    @Param ({"100", "1000", "5000", "20000"})
+    public int count;
+
+    /**
+     * The new order of the pages, <tt>shifted</tt> one position along or <tt>reversed</tt>.
+     */
+    @Param ({"shifted", "reversed"})
+    public String order;
+
+    /**
+     * The pages, indexed by their position.
+     */
+    private PageTable<Object> indexed;
+
+    /**
+     * The same pages in a plain list.
+     */
+    private ArrayList<Object> list;
+
+    /**
+     * <tt>true</tt> if the pages are reversed rather than shifted.
+     */
+    private boolean reversed;
+
+    @Setup
+    public void setUp() {
+        reversed = "reversed".equals(order);
+        indexed = new PageTable<Object>();
+        list = new ArrayList<Object>(count);
+        for (int x = 0; x < count; x++) {
+            final Object page = new Object();
+            indexed.set(x, page);
+            list.add(page);
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+        PageTable<Object> moved = new PageTable<Object>();
+        for (int x = 0; x < indexed.size(); x++) {
+            final Object page = indexed.valueAt(x);
+            final int position = indexed.indexOf(page);
+            moved.set(getNewPosition(position), page);
+        }
+        blackhole.consume(moved);
+    }
+
+    @Benchmark
+    public void linearSearch(Blackhole blackhole) {
+        ArrayList<Object> moved = new ArrayList<Object>(count + 1);
+        for (int x = 0; x <= count; x++) {
+            moved.add(null);
+        }
+        for (int x = 0; x < count; x++) {
+            final Object page = list.get(x);
+            final int position = list.indexOf(page);
+            moved.set(getNewPosition(position), page);
+        }
+        blackhole.consume(moved);
+    }
+
+    /**
+     * @param position The old position of a page.
+     * @return The new position of the page.
+     */
+    private int getNewPosition(int position) {
+        return reversed ? count - 1 - position : position + 1;
+    }
+}
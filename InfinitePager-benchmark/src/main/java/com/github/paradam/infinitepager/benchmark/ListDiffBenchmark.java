@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.benchmark;
+
+import com.github.paradam.infinitepager.core.ListDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the cost of working out how the pages change when a list of items is replaced by a
+ * new list with a few items inserted, removed and moved, against the size of the list.</p>
+ *
+ * <p>The time should grow with the size of the list times the number of edits, not with the square
+ * of the size of the list.</p>
+ *
+ * @author Adam Parr
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+public class ListDiffBenchmark {
+    /**
+     * The number of items in the list.
+     */
+    @Param ({"100", "1000", "10000", "100000"})
+    public int count;
+
+    /**
+     * The number of items inserted, and of items removed, and of items moved.
+     */
+    @Param ({"1", "10"})
+    public int edits;
+
+    /**
+     * Compares items by their value.
+     */
+    private final ListDiff.ItemCallback<Integer> callback = new ListDiff.ItemCallback<Integer>() {
+        @Override
+        public boolean areItemsTheSame(Integer oldItem, Integer newItem) {
+            return oldItem.intValue() == newItem.intValue();
+        }
+
+        @Override
+        public boolean areContentsTheSame(Integer oldItem, Integer newItem) {
+            return true;
+        }
+    };
+
+    /**
+     * The list of items before the change.
+     */
+    private List<Integer> oldList;
+
+    /**
+     * The list of items after the change.
+     */
+    private List<Integer> newList;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(count);
+        oldList = new ArrayList<Integer>(count);
+        for (int x = 0; x < count; x++) {
+            oldList.add(x);
+        }
+        newList = new ArrayList<Integer>(oldList);
+        for (int x = 0; x < edits; x++) {
+            newList.remove(random.nextInt(newList.size()));
+            newList.add(random.nextInt(newList.size() + 1), count + x);
+            newList.add(random.nextInt(newList.size() + 1), newList.remove(random.nextInt(newList.size())));
+        }
+    }
+
+    @Benchmark
+    public void diff(Blackhole blackhole) {
+        blackhole.consume(ListDiff.calculate(oldList, newList, callback, false));
+    }
+
+    @Benchmark
+    public void diffDetectMoves(Blackhole blackhole) {
+        blackhole.consume(ListDiff.calculate(oldList, newList, callback, true));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.benchmark;
+
+import com.github.paradam.infinitepager.core.InfinitePageMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the cost of mapping absolute ViewPager positions to relative positions, detecting when
+ * a position has wrapped and computing the window of pages kept by the pager.</p>
+ *
+ * <p>Each benchmark walks the pages across the seam at both ends of the list as well as through the
+ * middle, which is the path taken by every swipe.</p>
+ *
+ * @author Adam Parr
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class PageMapperBenchmark {
+    /**
+     * The number of absolute positions visited at each end of the list and in the middle.
+     */
+    private static final int STEPS = 8;
+
+    /**
+     * The relative number of pages.
+     */
+    @Param ({"4", "16", "1024", "100000", "10000000"})
+    public int count;
+
+    /**
+     * The number of pages the pager keeps either side of the primary item.
+     */
+    @Param ({"1"})
+    public int offscreenPageLimit;
+
+    /**
+     * <tt>true</tt> to measure the mapper in virtual mode.
+     */
+    @Param ({"false", "true"})
+    public boolean virtual;
+
+    /**
+     * The mapper being measured.
+     */
+    private InfinitePageMapper mapper;
+
+    /**
+     * The absolute positions visited by each benchmark.
+     */
+    private int[] positions;
+
+    @Setup
+    public void setUp() {
+        mapper = new InfinitePageMapper();
+        mapper.setVirtual(virtual);
+        mapper.setCount(count);
+
+        int last = mapper.getCount() - 1;
+        int middle = last / 2;
+        positions = new int[STEPS * 3];
+        for (int x = 0; x < STEPS; x++) {
+            positions[x] = Math.min(x, last);
+            positions[STEPS + x] = Math.min(Math.max(middle - STEPS / 2, 0) + x, last);
+            positions[STEPS * 2 + x] = Math.max(last - x, 0);
+        }
+    }
+
+    @Benchmark
+    public void mapping(Blackhole blackhole) {
+        for (int position : positions) {
+            blackhole.consume(mapper.getRelativePosition(position));
+        }
+    }
+
+    @Benchmark
+    public void wrapDetection(Blackhole blackhole) {
+        for (int position : positions) {
+            blackhole.consume(mapper.isWrapped(position, count));
+        }
+    }
+
+    @Benchmark
+    public void window(Blackhole blackhole) {
+        for (int position : positions) {
+            mapper.setPrimaryPosition(position);
+            int end = mapper.getWindowEnd(position, offscreenPageLimit);
+            for (int x = mapper.getWindowStart(position, offscreenPageLimit); x <= end; x++) {
+                blackhole.consume(mapper.isInstantiable(x, count));
+                blackhole.consume(mapper.isDestroyable(x));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.benchmark;
+
+import com.github.paradam.infinitepager.core.InfinitePageMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the bookkeeping done by the adapter for a single swipe against the size of the window
+ * of pages kept by the pager, as set by the offscreen page limit.</p>
+ *
+ * <p>Each invocation swipes forward across the seam between the last and first page, working out
+ * which pages leave and enter the window, switching back to the real pages once the position has
+ * wrapped and matching the pages either side of the switch to hand them over.</p>
+ *
+ * <p>The arithmetic alone costs little, what a larger window really costs is the pages it creates.
+ * Each page created, the page entering the window on every swipe and on switching back every page
+ * that could not be handed over, is charged a fixed amount of work through
+ * {@link Blackhole#consumeCPU(long)}, so the series over the limit shows the trade-off of a larger
+ * window rather than only the bookkeeping. Without the pages being handed over the whole window is
+ * created again on each switch back to the real pages.</p>
+ *
+ * @author Adam Parr
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class SwipeBenchmark {
+    /**
+     * The number of swipes made by each invocation.
+     */
+    private static final int SWIPES = 4;
+
+    /**
+     * The relative number of pages.
+     */
+    @Param ({"32", "1024"})
+    public int count;
+
+    /**
+     * The number of pages the pager keeps either side of the primary item.
+     */
+    @Param ({"1", "2", "3", "4", "8"})
+    public int offscreenPageLimit;
+
+    /**
+     * The work charged for each page created, in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param ({"100"})
+    public long pageTokens;
+
+    /**
+     * <tt>true</tt> if the pages of the old window are handed over when switching back to the real
+     * pages, rather than every page of the new window being created again.
+     */
+    @Param ({"true", "false"})
+    public boolean handOff;
+
+    /**
+     * The mapper being measured.
+     */
+    private InfinitePageMapper mapper;
+
+    /**
+     * The absolute position of the first swipe.
+     */
+    private int start;
+
+    /**
+     * The relative positions of the pages in the window before a switch back to the real pages,
+     * indexed by their offset from the first page in the window.
+     */
+    private int[] window;
+
+    @Setup
+    public void setUp() {
+        mapper = new InfinitePageMapper();
+        mapper.setOffscreenPageLimit(offscreenPageLimit);
+        mapper.setCount(count);
+
+        // Start far enough back that the final swipe crosses the seam.
+        start = count + mapper.getMargin() - SWIPES + 1;
+        window = new int[offscreenPageLimit * 2 + 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation (SWIPES)
+    public void swipe(Blackhole blackhole) {
+        int position = start;
+        mapper.setPrimaryPosition(position);
+        for (int x = 0; x < SWIPES; x++) {
+            final int leaving = position - offscreenPageLimit;
+            position++;
+            final int entering = position + offscreenPageLimit;
+
+            blackhole.consume(mapper.isDestroyable(leaving));
+            if (mapper.isInstantiable(entering, count)) {
+                blackhole.consume(mapper.getRelativePosition(entering));
+                Blackhole.consumeCPU(pageTokens);
+            }
+            mapper.setPrimaryPosition(position);
+
+            if (mapper.isWrapped(position, count)) {
+                position = recentre(position, blackhole);
+            }
+        }
+    }
+
+    /**
+     * Switch back to the real pages, handing the pages of the old window to the new window and
+     * creating the pages that could not be handed over.
+     *
+     * @param position  The absolute position that has wrapped.
+     * @param blackhole The Blackhole to consume the results.
+     * @return The new absolute position.
+     */
+    private int recentre(int position, Blackhole blackhole) {
+        int windowStart = mapper.getWindowStart(position, offscreenPageLimit);
+        int windowEnd = mapper.getWindowEnd(position, offscreenPageLimit);
+        for (int x = windowStart; x <= windowEnd; x++) {
+            window[x - windowStart] = mapper.getRelativePosition(x);
+        }
+
+        final int target = mapper.getTargetPosition(position, mapper.getRelativePosition(position), count);
+        final int shift = target - position;
+        int newEnd = mapper.getWindowEnd(target, offscreenPageLimit);
+        for (int x = mapper.getWindowStart(target, offscreenPageLimit); x <= newEnd; x++) {
+            final int old = x - shift - windowStart;
+            final boolean handedOver = handOff && old >= 0 && old <= windowEnd - windowStart && window[old] == mapper.getRelativePosition(x);
+            blackhole.consume(handedOver);
+            if (!handedOver) {
+                Blackhole.consumeCPU(pageTokens);
+            }
+        }
+        mapper.setPrimaryPosition(target);
+        return target;
+    }
+}
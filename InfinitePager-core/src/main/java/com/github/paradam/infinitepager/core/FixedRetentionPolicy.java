@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+/**
+ * <p>A RetentionPolicy that keeps every page at the same level.</p>
+ *
+ * <p>{@link #DETACH} keeps every page the user has visited, as done by a FragmentPagerAdapter.
+ * {@link #SAVE_STATE} keeps only the saved state of each page, as done by a
+ * FragmentStatePagerAdapter.</p>
+ *
+ * @author Adam Parr
+ */
+public class FixedRetentionPolicy extends RetentionPolicy {
+    /**
+     * The level every page is kept at.
+     */
+    private final int mRetention;
+
+    /**
+     * Constructor that accepts the level to keep every page at.
+     *
+     * @param retention One of {@link #DETACH}, {@link #SAVE_STATE} or {@link #DISCARD}.
+     */
+    public FixedRetentionPolicy(int retention) {
+        mRetention = checkRetention(retention);
+    }
+
+    @Override
+    public int onPageRemoved(int position, long size) {
+        return mRetention;
+    }
+
+    /**
+     * @return The level every page is kept at.
+     */
+    public int getRetention() {
+        return mRetention;
+    }
+}
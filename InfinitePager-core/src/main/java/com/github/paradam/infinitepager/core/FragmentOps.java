@@ -0,0 +1,328 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Records the operations an adapter makes on its fragments during an update, so they can be
+ * committed to the FragmentManager later, all at once or split between several transactions.</p>
+ *
+ * <p>The operations on each fragment are kept in the order they were made, so operations on one
+ * fragment can be committed before those on other fragments without changing the outcome.</p>
+ *
+ * <p>An operation undoing the last operation recorded on the same fragment cancels it out rather
+ * than being recorded, such as a fragment being detached and attached again, or removed and added
+ * again, when the pages are moved during an update. The fragment is then left as it was, without
+ * going through its lifecycle again. A fragment removed and added again is assumed to be added to
+ * the same container with the same tag.</p>
+ *
+ * @param <F> The type of the fragments.
+ * @author Adam Parr
+ */
+public class FragmentOps<F> {
+    /**
+     * Receives the operations when they are committed, such as by passing them on to a
+     * FragmentTransaction.
+     *
+     * @param <F> The type of the fragments.
+     */
+    public interface Target<F> {
+        /**
+         * Add a fragment to a container.
+         *
+         * @param containerId The id of the container.
+         * @param fragment    The fragment.
+         * @param tag         The tag of the fragment, <code>null</code> for none.
+         */
+        void add(int containerId, F fragment, String tag);
+
+        /**
+         * Attach a detached fragment.
+         *
+         * @param fragment The fragment.
+         */
+        void attach(F fragment);
+
+        /**
+         * Detach a fragment.
+         *
+         * @param fragment The fragment.
+         */
+        void detach(F fragment);
+
+        /**
+         * Remove a fragment.
+         *
+         * @param fragment The fragment.
+         */
+        void remove(F fragment);
+    }
+
+    /**
+     * A fragment was added.
+     */
+    private static final int ADD    = 0;
+    /**
+     * A fragment was attached.
+     */
+    private static final int ATTACH = 1;
+    /**
+     * A fragment was detached.
+     */
+    private static final int DETACH = 2;
+    /**
+     * A fragment was removed.
+     */
+    private static final int REMOVE = 3;
+
+    /**
+     * The type of each operation.
+     */
+    private final ArrayList<Integer> mTypes = new ArrayList<Integer>();
+
+    /**
+     * The fragment of each operation.
+     */
+    private final ArrayList<F> mFragments = new ArrayList<F>();
+
+    /**
+     * The container id of each operation, only used when adding.
+     */
+    private final ArrayList<Integer> mContainerIds = new ArrayList<Integer>();
+
+    /**
+     * The tag of each operation, only used when adding.
+     */
+    private final ArrayList<String> mTags = new ArrayList<String>();
+
+    /**
+     * Add a fragment to a container.
+     *
+     * @param containerId The id of the container.
+     * @param fragment    The fragment.
+     */
+    public void add(int containerId, F fragment) {
+        add(containerId, fragment, null);
+    }
+
+    /**
+     * Add a fragment to a container.
+     *
+     * @param containerId The id of the container.
+     * @param fragment    The fragment.
+     * @param tag         The tag of the fragment, <code>null</code> for none.
+     */
+    public void add(int containerId, F fragment, String tag) {
+        record(ADD, fragment, containerId, tag);
+    }
+
+    /**
+     * Attach a detached fragment.
+     *
+     * @param fragment The fragment.
+     */
+    public void attach(F fragment) {
+        record(ATTACH, fragment, 0, null);
+    }
+
+    /**
+     * Detach a fragment.
+     *
+     * @param fragment The fragment.
+     */
+    public void detach(F fragment) {
+        record(DETACH, fragment, 0, null);
+    }
+
+    /**
+     * Remove a fragment.
+     *
+     * @param fragment The fragment.
+     */
+    public void remove(F fragment) {
+        record(REMOVE, fragment, 0, null);
+    }
+
+    /**
+     * @return The number of operations recorded.
+     */
+    public int size() {
+        return mTypes.size();
+    }
+
+    /**
+     * @return <tt>true</tt> if no operations are recorded.
+     */
+    public boolean isEmpty() {
+        return mTypes.isEmpty();
+    }
+
+    /**
+     * @param index The index of the operation, in the order they were made.
+     * @return The fragment of the operation.
+     */
+    public F fragmentAt(int index) {
+        return mFragments.get(index);
+    }
+
+    /**
+     * @param fragment The fragment.
+     * @return <tt>true</tt> if an operation on the fragment is recorded.
+     */
+    public boolean contains(Object fragment) {
+        for (int x = 0; x < mFragments.size(); x++) {
+            if (mFragments.get(x) == fragment) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the operations of another instance to the end of this instance.
+     *
+     * @param other The operations to move, left empty.
+     */
+    public void addAll(FragmentOps<F> other) {
+        for (int x = 0; x < other.mTypes.size(); x++) {
+            record(other.mTypes.get(x), other.mFragments.get(x), other.mContainerIds.get(x), other.mTags.get(x));
+        }
+        other.clear();
+    }
+
+    /**
+     * Take out the operations on a fragment, keeping the operations on every other fragment.
+     *
+     * @param fragment The fragment, <code>null</code> for none.
+     * @return The operations on the fragment, in the order they were made.
+     */
+    public FragmentOps<F> split(Object fragment) {
+        final FragmentOps<F> split = new FragmentOps<F>();
+        if (fragment == null) {
+            return split;
+        }
+        int kept = 0;
+        for (int x = 0; x < mTypes.size(); x++) {
+            if (mFragments.get(x) == fragment) {
+                split.record(mTypes.get(x), mFragments.get(x), mContainerIds.get(x), mTags.get(x));
+            } else {
+                mTypes.set(kept, mTypes.get(x));
+                mFragments.set(kept, mFragments.get(x));
+                mContainerIds.set(kept, mContainerIds.get(x));
+                mTags.set(kept, mTags.get(x));
+                kept++;
+            }
+        }
+        truncate(kept);
+        return split;
+    }
+
+    /**
+     * Pass every operation to a target in the order they were made, then forget them.
+     *
+     * @param target The target to pass the operations to.
+     */
+    public void commitTo(Target<F> target) {
+        for (int x = 0; x < mTypes.size(); x++) {
+            final F fragment = mFragments.get(x);
+            switch (mTypes.get(x)) {
+                case ADD:
+                    target.add(mContainerIds.get(x), fragment, mTags.get(x));
+                    break;
+                case ATTACH:
+                    target.attach(fragment);
+                    break;
+                case DETACH:
+                    target.detach(fragment);
+                    break;
+                default:
+                    target.remove(fragment);
+                    break;
+            }
+        }
+        clear();
+    }
+
+    /**
+     * Forget every operation.
+     */
+    public void clear() {
+        mTypes.clear();
+        mFragments.clear();
+        mContainerIds.clear();
+        mTags.clear();
+    }
+
+    /**
+     * Record an operation, or cancel out the last operation on the fragment if it undoes it.
+     *
+     * @param type        The type of operation.
+     * @param fragment    The fragment.
+     * @param containerId The id of the container, when adding.
+     * @param tag         The tag of the fragment, when adding.
+     */
+    private void record(int type, F fragment, int containerId, String tag) {
+        for (int x = mTypes.size() - 1; x >= 0; x--) {
+            if (mFragments.get(x) == fragment) {
+                if (mTypes.get(x) == opposite(type)) {
+                    mTypes.remove(x);
+                    mFragments.remove(x);
+                    mContainerIds.remove(x);
+                    mTags.remove(x);
+                    return;
+                }
+                break;
+            }
+        }
+        mTypes.add(type);
+        mFragments.add(fragment);
+        mContainerIds.add(containerId);
+        mTags.add(tag);
+    }
+
+    /**
+     * @param type The type of operation.
+     * @return The type of operation undoing it.
+     */
+    private static int opposite(int type) {
+        switch (type) {
+            case ADD:
+                return REMOVE;
+            case ATTACH:
+                return DETACH;
+            case DETACH:
+                return ATTACH;
+            default:
+                return ADD;
+        }
+    }
+
+    /**
+     * Forget the operations from an index onwards.
+     *
+     * @param size The number of operations to keep.
+     */
+    private void truncate(int size) {
+        for (int x = mTypes.size() - 1; x >= size; x--) {
+            mTypes.remove(x);
+            mFragments.remove(x);
+            mContainerIds.remove(x);
+            mTags.remove(x);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <p>Keeps the instances of fragments that have been removed from the FragmentManager, so a fragment
+ * adapter can give them to new pages rather than allocating new fragments.</p>
+ *
+ * <p>Fragments are pooled by their class and the type of page they were showing, up to a maximum
+ * number of fragments for each pair, further fragments being left to be garbage collected. The
+ * most recently pooled fragment is taken first.</p>
+ *
+ * @param <F> The type of the fragments.
+ * @author Adam Parr
+ */
+public class FragmentPool<F> {
+    /**
+     * The maximum number of fragments kept for each class and type of page.
+     */
+    private int mMaxPerType;
+
+    /**
+     * The pooled fragments, keyed by their class and type of page.
+     */
+    private final HashMap<Key, ArrayList<F>> mPool = new HashMap<Key, ArrayList<F>>();
+
+    /**
+     * The total number of fragments pooled.
+     */
+    private int mSize = 0;
+
+    /**
+     * @param maxPerType The maximum number of fragments kept for each class and type of page,
+     *                   <tt>0</tt> to keep none.
+     */
+    public FragmentPool(int maxPerType) {
+        setMaxPerType(maxPerType);
+    }
+
+    /**
+     * Set the maximum number of fragments kept for each class and type of page, dropping the least
+     * recently pooled fragments above the new maximum.
+     *
+     * @param maxPerType The maximum number of fragments, <tt>0</tt> to keep none.
+     */
+    public void setMaxPerType(int maxPerType) {
+        if (maxPerType < 0) {
+            throw new IllegalArgumentException("Invalid maximum: " + maxPerType);
+        }
+        mMaxPerType = maxPerType;
+        for (ArrayList<F> fragments : mPool.values()) {
+            while (fragments.size() > maxPerType) {
+                fragments.remove(0);
+                mSize--;
+            }
+        }
+    }
+
+    /**
+     * @return The maximum number of fragments kept for each class and type of page.
+     */
+    public int getMaxPerType() {
+        return mMaxPerType;
+    }
+
+    /**
+     * Pool a fragment that is no longer used by any page.
+     *
+     * @param type     The type of page the fragment was showing.
+     * @param fragment The fragment.
+     * @return <tt>true</tt> if the fragment was pooled, <tt>false</tt> if the pool for its class and
+     * type is already full.
+     */
+    public boolean put(int type, F fragment) {
+        final Key key = new Key(fragment.getClass(), type);
+        ArrayList<F> fragments = mPool.get(key);
+        if (fragments == null) {
+            if (mMaxPerType == 0) {
+                return false;
+            }
+            fragments = new ArrayList<F>(mMaxPerType);
+            mPool.put(key, fragments);
+        }
+        if (fragments.size() >= mMaxPerType || fragments.contains(fragment)) {
+            return false;
+        }
+        fragments.add(fragment);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Take a pooled fragment of the given class and type of page.
+     *
+     * @param fragmentClass The class of the fragment.
+     * @param type          The type of page.
+     * @param pending       The operations not yet committed, a fragment with an operation recorded
+     *                      is still in use by the FragmentManager and is not taken. May be
+     *                      <code>null</code>.
+     * @return The fragment, <code>null</code> if none is pooled.
+     */
+    public F take(Class<?> fragmentClass, int type, FragmentOps<F> pending) {
+        final ArrayList<F> fragments = mPool.get(new Key(fragmentClass, type));
+        if (fragments == null) {
+            return null;
+        }
+        for (int x = fragments.size() - 1; x >= 0; x--) {
+            if (pending == null || !pending.contains(fragments.get(x))) {
+                mSize--;
+                return fragments.remove(x);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove a fragment from the pool, such as when it is used by a page again.
+     *
+     * @param fragment The fragment.
+     * @return <tt>true</tt> if the fragment was pooled.
+     */
+    public boolean remove(Object fragment) {
+        if (mSize == 0 || fragment == null) {
+            return false;
+        }
+        for (ArrayList<F> fragments : mPool.values()) {
+            for (int x = 0; x < fragments.size(); x++) {
+                if (fragments.get(x) == fragment) {
+                    fragments.remove(x);
+                    mSize--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The total number of fragments pooled.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Remove every fragment.
+     */
+    public void clear() {
+        mPool.clear();
+        mSize = 0;
+    }
+
+    /**
+     * The class of a fragment and the type of page it shows.
+     */
+    private static final class Key {
+        /**
+         * The class of the fragment.
+         */
+        private final Class<?> mFragmentClass;
+
+        /**
+         * The type of page.
+         */
+        private final int mType;
+
+        Key(Class<?> fragmentClass, int type) {
+            mFragmentClass = fragmentClass;
+            mType = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mType == other.mType && mFragmentClass == other.mFragmentClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mFragmentClass.hashCode() + mType;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+/**
+ * <p>Maps the absolute positions used by a ViewPager onto the relative positions of the pages
+ * provided by an InfinitePagerAdapter.</p>
+ *
+ * <p>To simulate an infinite list of pages {@link #getMargin()} additional pages are placed either
+ * side of the real pages, the page at the absolute position of {@link #getMargin()} being the
+ * relative page <tt>0</tt>. Once the user settles on one of the additional pages the pager switches
+ * to the absolute position of the real page it represents, this is referred to as the page having
+ * <em>wrapped</em>.</p>
+ *
+ * <p>In virtual mode the margin is instead made large enough that the real pages are repeated
+ * many times either side, so the pager only needs to switch back to the real pages after the user
+ * has scrolled a long way in one direction.</p>
+ *
+ * <p>This class has no dependency on the Android framework so that it can be used and measured
+ * outside of a device.</p>
+ *
+ * @author Adam Parr
+ */
+public class InfinitePageMapper {
+    /**
+     * The number of additional pages on either side of the list of pages to simulate a infinite
+     * scrolling action, when using the default offscreen page limit of <tt>1</tt>.
+     */
+    public static final int MARGIN = 2;
+
+    /**
+     * The minimum number of pages needed before the pages will be mapped as an infinite list, when
+     * using the default offscreen page limit of <tt>1</tt>.
+     */
+    public static final int MIN = 4;
+
+    /**
+     * <p>The approximate number of absolute positions used in virtual mode.</p>
+     *
+     * <p>ViewPager calculates the scroll position of each page as a float multiplied by the width of
+     * the pager, a float only being able to exactly represent integers up to 2<sup>24</sup> this is
+     * kept small enough that pages are still aligned to the pixel when the pager is several thousand
+     * pixels wide.</p>
+     */
+    public static final int VIRTUAL_COUNT = 8192;
+
+    /**
+     * The user is scrolling towards the pages before the primary item.
+     */
+    public static final int DIRECTION_BACKWARD = -1;
+    /**
+     * The direction the user is scrolling is not yet known.
+     */
+    public static final int DIRECTION_NONE     = 0;
+    /**
+     * The user is scrolling towards the pages after the primary item.
+     */
+    public static final int DIRECTION_FORWARD  = 1;
+
+    /**
+     * The current relative number of pages, <tt>-1</tt> if not yet set.
+     */
+    private int mCount = -1;
+
+    /**
+     * The number of additional pages per side to simulate.
+     */
+    private int mMargin = MARGIN;
+
+    /**
+     * <tt>false</tt> if the pages should never be mapped as an infinite list.
+     */
+    private boolean mInfinite = true;
+
+    /**
+     * <tt>true</tt> if the real pages are repeated up to {@link #VIRTUAL_COUNT} times.
+     */
+    private boolean mVirtual = false;
+
+    /**
+     * The absolute position of the primary item.
+     */
+    private int mPrimaryPosition = 0;
+
+    /**
+     * The number of pages the pager keeps either side of the primary item.
+     */
+    private int mOffscreenPageLimit = 1;
+
+    /**
+     * Set the relative number of pages, updating the margin to match.
+     *
+     * @param count The number of real pages.
+     */
+    public void setCount(int count) {
+        mCount = count;
+        updateMargin();
+    }
+
+    /**
+     * Set if the pages may be mapped as an infinite list, such as when the pager hosting the
+     * pages is unable to scroll infinitely.
+     *
+     * @param infinite <tt>true</tt> to allow the pages to be mapped as an infinite list.
+     */
+    public void setInfinite(boolean infinite) {
+        mInfinite = infinite;
+        updateMargin();
+    }
+
+    /**
+     * Set if the real pages should be repeated either side of the real pages until there are
+     * around {@link #VIRTUAL_COUNT} pages in total, rather than only a few pages either
+     * side.
+     *
+     * @param virtual <tt>true</tt> to enable virtual mode.
+     */
+    public void setVirtual(boolean virtual) {
+        mVirtual = virtual;
+        updateMargin();
+    }
+
+    /**
+     * @return <tt>true</tt> if virtual mode is enabled.
+     * @see #setVirtual(boolean)
+     */
+    public boolean isVirtual() {
+        return mVirtual;
+    }
+
+    /**
+     * <p>Set the number of pages the pager keeps either side of the primary item.</p>
+     *
+     * <p>The margin is kept one larger than the limit so that every page the pager keeps while on
+     * one of the additional pages exists, and the minimum number of pages is kept large enough that
+     * no two pages the pager keeps at the same time are the same relative page.</p>
+     *
+     * @param limit The offscreen page limit of the pager, at least <tt>1</tt>.
+     */
+    public void setOffscreenPageLimit(int limit) {
+        mOffscreenPageLimit = Math.max(1, limit);
+        updateMargin();
+    }
+
+    /**
+     * @return The number of pages the pager keeps either side of the primary item.
+     */
+    public int getOffscreenPageLimit() {
+        return mOffscreenPageLimit;
+    }
+
+    /**
+     * @return The minimum number of pages needed before the pages will be mapped as an infinite
+     * list, {@value #MIN} for the default offscreen page limit.
+     */
+    public int getMinimumCount() {
+        return (mOffscreenPageLimit * 2) + 2;
+    }
+
+    /**
+     * Recalculate the margin from the current count.
+     */
+    private void updateMargin() {
+        final int margin = mOffscreenPageLimit + 1;
+        if (mCount < getMinimumCount() || !mInfinite) {
+            mMargin = 0;
+        } else if (mVirtual) {
+            // Keep the margin a multiple of the count, so the middle of the pages is always the
+            // first real page.
+            mMargin = Math.max(margin, (VIRTUAL_COUNT / 2 / mCount) * mCount);
+        } else {
+            mMargin = margin;
+        }
+    }
+
+    /**
+     * @return The relative number of pages, <tt>-1</tt> if not yet set.
+     */
+    public int getRelativeCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The number of pages including the additional pages on either side.
+     */
+    public int getCount() {
+        return mCount + (mMargin * 2);
+    }
+
+    /**
+     * @return The number of additional pages on either side of the real pages, either <tt>0</tt>
+     * or one more than the offscreen page limit, or when in virtual mode up to half of
+     * {@link #VIRTUAL_COUNT}.
+     */
+    public int getMargin() {
+        return mMargin;
+    }
+
+    /**
+     * Get the relative position of the page at the absolute position.
+     *
+     * @param position The absolute position.
+     * @return The relative position, <tt>0</tt> if there are no pages.
+     */
+    public int getRelativePosition(int position) {
+        return calculateRelative(position, mMargin, mCount);
+    }
+
+    /**
+     * Get the absolute position of the real page at the relative position.
+     *
+     * @param relativePosition The relative position.
+     * @return The absolute position.
+     */
+    public int getPosition(int relativePosition) {
+        return mCount > 0 ? (relativePosition % mCount) + mMargin : 0;
+    }
+
+    /**
+     * Calculate the relative position of an absolute position, returning <tt>0</tt> if there are
+     * no pages.
+     *
+     * @param position The absolute position.
+     * @param margin   The margin either side of the real pages.
+     * @param count    The relative number of pages.
+     * @return The relative position.
+     */
+    public static int calculateRelative(int position, int margin, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        int relative = (position - margin) % count;
+        return relative < 0 ? relative + count : relative;
+    }
+
+    /**
+     * <p>Check if the absolute position is one of the additional pages and as such the pager should
+     * switch to the real page once it has finished scrolling.</p>
+     *
+     * <p>In virtual mode this is only the case once the position is getting close to either end of
+     * the pages.</p>
+     *
+     * @param position The absolute position.
+     * @param count    The relative number of pages.
+     * @return <tt>true</tt> if the position has wrapped.
+     */
+    public boolean isWrapped(int position, int count) {
+        if (mVirtual && mMargin > 0) {
+            return Math.min(position, count + (mMargin * 2) - 1 - position) < Math.max(1, mMargin / 2);
+        }
+        return position - mMargin != calculateRelative(position, mMargin, count);
+    }
+
+    /**
+     * <p>Get the absolute position to scroll to when moving from the absolute position
+     * <code>position</code> to the relative position <code>item</code>, moving onto the additional
+     * pages if moving directly between the first and last page.</p>
+     *
+     * <p>In virtual mode the move is made relative to the current position, unless the current
+     * position has wrapped in which case the pager is moved back to the real pages.</p>
+     *
+     * @param position The absolute position of the current page.
+     * @param item     The relative position to move to.
+     * @param count    The relative number of pages.
+     * @return The absolute position to move to.
+     */
+    public int getTargetPosition(int position, int item, int count) {
+        int current = calculateRelative(position, mMargin, count);
+        if (mVirtual && mMargin > 0 && !isWrapped(position, count)) {
+            if (current == 0 && item == count - 1) {
+                return position - 1;
+            } else if (current == count - 1 && item == 0) {
+                return position + 1;
+            }
+            return position + (item % count) - current;
+        } else if (mMargin > 0) {
+            if (current == 0 && item == count - 1) {
+                return current + mMargin - 1;
+            } else if (current == count - 1 && item == 0) {
+                return count + mMargin;
+            }
+        }
+        return count > 0 ? (item % count) + mMargin : 0;
+    }
+
+    /**
+     * Update which page is the primary item.
+     *
+     * @param position The absolute position of the primary item.
+     */
+    public void setPrimaryPosition(int position) {
+        mPrimaryPosition = position;
+    }
+
+    /**
+     * @return The absolute position of the primary item.
+     */
+    public int getPrimaryPosition() {
+        return mPrimaryPosition;
+    }
+
+    /**
+     * <p>Check if the page at the absolute position may be destroyed. The page may not be destroyed
+     * if it is outside of the real and additional pages, or if it represents the same relative page
+     * as a page beside the primary item, as an adapter may have returned the same page for both
+     * positions.</p>
+     *
+     * <p>This is only needed for pages the adapter no longer knows the position of, such as after the
+     * data set has changed.</p>
+     *
+     * @param position The absolute position of the page to destroy.
+     * @return <tt>true</tt> if the page should be destroyed.
+     */
+    public boolean isDestroyable(int position) {
+        if (position < 0 || position >= getCount()) {
+            return false;
+        }
+        if (mMargin == 0) {
+            // Case where the item at the index position 1 may be requested to be destroyed
+            // even when the current selected item is at position 0, ignore this request.
+            return !(mPrimaryPosition == 0 && position == 1);
+        }
+        // Keep the page if it is the same relative page as a page the pager keeps around the
+        // primary item.
+        return Math.abs(position + mCount - mPrimaryPosition) > mOffscreenPageLimit
+                && Math.abs(position - mCount - mPrimaryPosition) > mOffscreenPageLimit;
+    }
+
+    /**
+     * Check if the page at the absolute position is further behind the primary item than
+     * <code>trailingPageLimit</code> when moving in <code>direction</code>.
+     *
+     * @param position          The absolute position of the page.
+     * @param primaryPosition   The absolute position of the primary item.
+     * @param direction         One of {@link #DIRECTION_BACKWARD}, {@link #DIRECTION_NONE} or
+     *                          {@link #DIRECTION_FORWARD}.
+     * @param trailingPageLimit The number of pages kept behind the primary item.
+     * @return <tt>true</tt> if the page is behind the primary item and outside of the limit, never
+     * <tt>true</tt> if the direction is not known.
+     */
+    public static boolean isTrailing(int position, int primaryPosition, int direction, int trailingPageLimit) {
+        return (position - primaryPosition) * direction < -trailingPageLimit;
+    }
+
+    /**
+     * Check if a page may be instantiated at the absolute position.
+     *
+     * @param position The absolute position.
+     * @param count    The relative number of pages.
+     * @return <tt>true</tt> if a page should be instantiated at the position.
+     */
+    public boolean isInstantiable(int position, int count) {
+        if (mMargin > 0) {
+            return position >= 0 && position < count + (mMargin * 2);
+        }
+        return position >= -1 && position <= count;
+    }
+
+    /**
+     * Get the first absolute position the pager will keep a page for while the primary item is at
+     * <code>position</code>.
+     *
+     * @param position           The absolute position of the primary item.
+     * @param offscreenPageLimit The number of pages kept either side of the primary item.
+     * @return The first absolute position within the window.
+     */
+    public int getWindowStart(int position, int offscreenPageLimit) {
+        return Math.max(0, position - offscreenPageLimit);
+    }
+
+    /**
+     * Get the last absolute position the pager will keep a page for while the primary item is at
+     * <code>position</code>.
+     *
+     * @param position           The absolute position of the primary item.
+     * @param offscreenPageLimit The number of pages kept either side of the primary item.
+     * @return The last absolute position within the window.
+     */
+    public int getWindowEnd(int position, int offscreenPageLimit) {
+        return Math.min(getCount() - 1, position + offscreenPageLimit);
+    }
+}
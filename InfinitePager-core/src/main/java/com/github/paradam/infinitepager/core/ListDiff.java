@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Works out how the pages of an adapter change when its list of items is replaced by a new list,
+ * as a {@link PageUpdate} mapping the position of each old item to its position in the new list.</p>
+ *
+ * <p>The items kept in place are found as the longest common subsequence of the two lists using
+ * Myers' O((N+M)D) difference algorithm in linear space, so the cost grows with the number of
+ * differences D rather than the product of the list sizes. The old items not in the subsequence
+ * are removed, and the new items not in it are inserted, unless moves are detected, in which case
+ * a removed item the same as an inserted item is moved instead. Items kept whose contents have
+ * changed are created again.</p>
+ *
+ * <p>Only the lists are read, so the difference can be worked out on a background thread as long
+ * as neither list is changed meanwhile.</p>
+ *
+ * @author Adam Parr
+ */
+public final class ListDiff {
+    /**
+     * Decides whether an old and a new item are the same item, and whether its contents changed.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface ItemCallback<T> {
+        /**
+         * Check if two items represent the same item, such as by comparing their ids.
+         *
+         * @param oldItem The item in the old list.
+         * @param newItem The item in the new list.
+         * @return <tt>true</tt> if the items are the same item.
+         */
+        boolean areItemsTheSame(T oldItem, T newItem);
+
+        /**
+         * Check if the same item has the same contents in both lists, called only for items
+         * {@link #areItemsTheSame(Object, Object) the same}.
+         *
+         * @param oldItem The item in the old list.
+         * @param newItem The item in the new list.
+         * @return <tt>true</tt> if the page of the item does not need to be created again.
+         */
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    /**
+     * Not created, use {@link #calculate(java.util.List, java.util.List, ItemCallback, boolean)}.
+     */
+    private ListDiff() {
+    }
+
+    /**
+     * Work out how the pages change when the old list is replaced by the new list.
+     *
+     * @param oldList     The list of items the pages currently show.
+     * @param newList     The list of items replacing it.
+     * @param callback    Compares the items of the two lists.
+     * @param detectMoves <tt>true</tt> to look for removed items that were inserted elsewhere, which
+     *                    takes time proportional to the product of the numbers of items removed and
+     *                    inserted.
+     * @param <T>         The type of the items.
+     * @return The change to the pages.
+     */
+    public static <T> PageUpdate calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback, boolean detectMoves) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+        final int[] newPositions = new int[oldSize];
+        final boolean[] inserted = new boolean[newSize];
+        for (int x = 0; x < oldSize; x++) {
+            newPositions[x] = PageUpdate.NONE;
+        }
+        for (int x = 0; x < newSize; x++) {
+            inserted[x] = true;
+        }
+
+        // The searches may look one diagonal past the furthest diagonal of either direction.
+        final int offset = (oldSize + newSize) * 2 + 2;
+        final int[] forward = new int[offset * 2 + 1];
+        final int[] backward = new int[offset * 2 + 1];
+        final int[] snake = new int[5];
+        final ArrayList<int[]> ranges = new ArrayList<int[]>();
+        ranges.add(new int[] {0, oldSize, 0, newSize});
+        while (!ranges.isEmpty()) {
+            final int[] range = ranges.remove(ranges.size() - 1);
+            final int oldStart = range[0];
+            final int oldEnd = range[1];
+            final int newStart = range[2];
+            final int newEnd = range[3];
+            if (oldStart == oldEnd || newStart == newEnd) {
+                continue;
+            }
+            middleSnake(oldList, newList, callback, oldStart, oldEnd, newStart, newEnd, forward, backward, offset, snake);
+            if (snake[4] <= 1) {
+                // At most one item differs, so every other item is matched from either end.
+                int oldX = oldStart;
+                int newX = newStart;
+                while (oldX < oldEnd && newX < newEnd && callback.areItemsTheSame(oldList.get(oldX), newList.get(newX))) {
+                    match(newPositions, inserted, oldX++, newX++);
+                }
+                int oldY = oldEnd;
+                int newY = newEnd;
+                while (oldY > oldX && newY > newX && callback.areItemsTheSame(oldList.get(oldY - 1), newList.get(newY - 1))) {
+                    match(newPositions, inserted, --oldY, --newY);
+                }
+                continue;
+            }
+            for (int x = snake[0], y = snake[1]; x < snake[2]; x++, y++) {
+                match(newPositions, inserted, x, y);
+            }
+            ranges.add(new int[] {oldStart, snake[0], newStart, snake[1]});
+            ranges.add(new int[] {snake[2], oldEnd, snake[3], newEnd});
+        }
+
+        // The page to show instead of a removed page is the next page kept in place.
+        final int[] targetPositions = new int[oldSize + 1];
+        targetPositions[oldSize] = newSize;
+        int next = newSize;
+        for (int x = oldSize - 1; x >= 0; x--) {
+            if (newPositions[x] != PageUpdate.NONE) {
+                next = newPositions[x];
+            }
+            targetPositions[x] = newPositions[x] != PageUpdate.NONE ? newPositions[x] : next;
+        }
+
+        if (detectMoves) {
+            for (int x = 0; x < oldSize; x++) {
+                if (newPositions[x] != PageUpdate.NONE) {
+                    continue;
+                }
+                for (int y = 0; y < newSize; y++) {
+                    if (inserted[y] && callback.areItemsTheSame(oldList.get(x), newList.get(y))) {
+                        match(newPositions, inserted, x, y);
+                        targetPositions[x] = y;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int x = 0; x < oldSize; x++) {
+            if (newPositions[x] != PageUpdate.NONE && !callback.areContentsTheSame(oldList.get(x), newList.get(newPositions[x]))) {
+                newPositions[x] = PageUpdate.NONE;
+            }
+        }
+        return PageUpdate.mapped(newPositions, targetPositions);
+    }
+
+    /**
+     * Record an old item as being at a position in the new list.
+     *
+     * @param newPositions The position in the new list of each old item.
+     * @param inserted     Whether each new item is not yet matched.
+     * @param oldPosition  The position of the item in the old list.
+     * @param newPosition  The position of the item in the new list.
+     */
+    private static void match(int[] newPositions, boolean[] inserted, int oldPosition, int newPosition) {
+        newPositions[oldPosition] = newPosition;
+        inserted[newPosition] = false;
+    }
+
+    /**
+     * Find the middle snake of the shortest edit script between two ranges of the lists, the run of
+     * matching items the forward and backward searches of Myers' algorithm meet on.
+     *
+     * @param oldList  The old list.
+     * @param newList  The new list.
+     * @param callback Compares the items.
+     * @param oldStart The start of the range of the old list.
+     * @param oldEnd   The end of the range of the old list, exclusive.
+     * @param newStart The start of the range of the new list.
+     * @param newEnd   The end of the range of the new list, exclusive.
+     * @param forward  The furthest position in the old list reached on each diagonal searching forward.
+     * @param backward The furthest position in the old list reached on each diagonal searching backward.
+     * @param offset   The index of diagonal <tt>0</tt> in <code>forward</code> and <code>backward</code>.
+     * @param snake    Set to the start in the old and new lists, the end in the old and new lists and
+     *                 the length of the shortest edit script of the ranges.
+     * @param <T>      The type of the items.
+     */
+    private static <T> void middleSnake(List<T> oldList, List<T> newList, ItemCallback<T> callback, int oldStart, int oldEnd, int newStart, int newEnd, int[] forward, int[] backward, int offset, int[] snake) {
+        final int oldSize = oldEnd - oldStart;
+        final int newSize = newEnd - newStart;
+        final int delta = oldSize - newSize;
+        final boolean odd = (delta & 1) != 0;
+        forward[offset + 1] = 0;
+        backward[offset + delta + 1] = oldSize + 1;
+        for (int d = 0; d <= (oldSize + newSize + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                final int startX = x;
+                final int startY = y;
+                while (x < oldSize && y < newSize && callback.areItemsTheSame(oldList.get(oldStart + x), newList.get(newStart + y))) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1) && x >= backward[offset + k]) {
+                    setSnake(snake, oldStart + startX, newStart + startY, oldStart + x, newStart + y, 2 * d - 1);
+                    return;
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                final int diagonal = k + delta;
+                int x;
+                if (k == -d) {
+                    x = backward[offset + diagonal + 1] - 1;
+                } else if (k == d || backward[offset + diagonal - 1] < backward[offset + diagonal + 1]) {
+                    x = backward[offset + diagonal - 1];
+                } else {
+                    x = backward[offset + diagonal + 1] - 1;
+                }
+                int y = x - diagonal;
+                final int endX = x;
+                final int endY = y;
+                while (x > 0 && y > 0 && callback.areItemsTheSame(oldList.get(oldStart + x - 1), newList.get(newStart + y - 1))) {
+                    x--;
+                    y--;
+                }
+                backward[offset + diagonal] = x;
+                if (!odd && diagonal >= -d && diagonal <= d && forward[offset + diagonal] >= x) {
+                    setSnake(snake, oldStart + x, newStart + y, oldStart + endX, newStart + endY, 2 * d);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    /**
+     * Set the result of {@link #middleSnake}.
+     *
+     * @param snake    The result.
+     * @param oldStart The start of the snake in the old list.
+     * @param newStart The start of the snake in the new list.
+     * @param oldEnd   The end of the snake in the old list.
+     * @param newEnd   The end of the snake in the new list.
+     * @param length   The length of the shortest edit script.
+     */
+    private static void setSnake(int[] snake, int oldStart, int newStart, int oldEnd, int newEnd, int length) {
+        snake[0] = oldStart;
+        snake[1] = newStart;
+        snake[2] = oldEnd;
+        snake[3] = newEnd;
+        snake[4] = length;
+    }
+}
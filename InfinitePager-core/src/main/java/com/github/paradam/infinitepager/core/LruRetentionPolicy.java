@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * <p>A RetentionPolicy that detaches the most recently left pages, demoting the least recently used
+ * detached page to its saved state once more than a set number of pages are detached, and
+ * optionally discarding the least recently used saved state once more than a set number of saved
+ * states are kept.</p>
+ *
+ * <p>How often pages are attached again at once, created again from their saved state, and
+ * demoted is counted, see {@link #getReattachCount()}, {@link #getRestoreCount()},
+ * {@link #getDemotionCount()} and {@link #getDiscardCount()}.</p>
+ *
+ * @author Adam Parr
+ */
+public class LruRetentionPolicy extends RetentionPolicy {
+    /**
+     * The maximum number of detached pages.
+     */
+    private int mMaxDetached;
+
+    /**
+     * The maximum number of saved states, <tt>-1</tt> for no limit.
+     */
+    private int mMaxSaved;
+
+    /**
+     * The detached pages in the order they were left, mapped to their estimated size.
+     */
+    private final LinkedHashMap<Integer, Long> mDetached = new LinkedHashMap<Integer, Long>();
+
+    /**
+     * The pages kept as saved state in the order they were demoted.
+     */
+    private final LinkedHashSet<Integer> mSaved = new LinkedHashSet<Integer>();
+
+    /**
+     * The total estimated size of the detached pages.
+     */
+    private long mDetachedSize = 0;
+
+    /**
+     * The number of detached pages added again.
+     */
+    private int mReattachCount = 0;
+
+    /**
+     * The number of pages kept as saved state added again.
+     */
+    private int mRestoreCount = 0;
+
+    /**
+     * The number of detached pages demoted to their saved state or discarded.
+     */
+    private int mDemotionCount = 0;
+
+    /**
+     * The number of saved states discarded.
+     */
+    private int mDiscardCount = 0;
+
+    /**
+     * Constructor that accepts the maximum number of detached pages, keeping the saved state of
+     * every other page.
+     *
+     * @param maxDetached The maximum number of detached pages.
+     */
+    public LruRetentionPolicy(int maxDetached) {
+        this(maxDetached, -1);
+    }
+
+    /**
+     * Constructor that accepts the maximum number of detached pages and saved states.
+     *
+     * @param maxDetached The maximum number of detached pages.
+     * @param maxSaved    The maximum number of saved states, <tt>-1</tt> for no limit.
+     */
+    public LruRetentionPolicy(int maxDetached, int maxSaved) {
+        mMaxDetached = maxDetached;
+        mMaxSaved = maxSaved;
+    }
+
+    @Override
+    public int onPageRemoved(int position, long size) {
+        forget(position);
+        if (!canDetach(size)) {
+            return save(position) ? SAVE_STATE : DISCARD;
+        }
+        mDetached.put(position, size);
+        mDetachedSize += size;
+        trimDetached(position);
+        return DETACH;
+    }
+
+    @Override
+    public void onPageAdded(int position) {
+        if (mDetached.containsKey(position)) {
+            mReattachCount++;
+        } else if (mSaved.contains(position)) {
+            mRestoreCount++;
+        }
+        forget(position);
+    }
+
+    @Override
+    public void clear() {
+        mDetached.clear();
+        mSaved.clear();
+        mDetachedSize = 0;
+    }
+
+    @Override
+    public void onPositionsChanged(PageUpdate update) {
+        update.apply(mDetached);
+        update.apply(mSaved);
+        mDetachedSize = 0;
+        for (Long size : mDetached.values()) {
+            mDetachedSize += size;
+        }
+    }
+
+    /**
+     * Check if a page can be detached at all, before any other page is demoted to make room.
+     *
+     * @param size The estimated size of the page.
+     * @return <tt>true</tt> if the page can be detached.
+     */
+    protected boolean canDetach(long size) {
+        return mMaxDetached > 0;
+    }
+
+    /**
+     * Check if too many pages are detached.
+     *
+     * @param count The number of detached pages.
+     * @param size  The total estimated size of the detached pages.
+     * @return <tt>true</tt> if the least recently used page should be demoted.
+     */
+    protected boolean isOverLimit(int count, long size) {
+        return count > mMaxDetached;
+    }
+
+    /**
+     * Set the maximum number of detached pages, demoting the least recently used detached pages to
+     * their saved state if there are now too many.
+     *
+     * @param maxDetached The maximum number of detached pages.
+     * @return The number of pages demoted.
+     */
+    public int setMaxDetached(int maxDetached) {
+        mMaxDetached = maxDetached;
+        return trimDetached(null);
+    }
+
+    /**
+     * @return The maximum number of detached pages.
+     */
+    public int getMaxDetached() {
+        return mMaxDetached;
+    }
+
+    /**
+     * Set the maximum number of saved states, discarding the least recently saved states if there
+     * are now too many.
+     *
+     * @param maxSaved The maximum number of saved states, <tt>-1</tt> for no limit.
+     * @return The number of saved states discarded.
+     */
+    public int setMaxSaved(int maxSaved) {
+        mMaxSaved = maxSaved;
+        int discarded = 0;
+        final Iterator<Integer> iterator = mSaved.iterator();
+        while (mMaxSaved >= 0 && mSaved.size() > mMaxSaved && iterator.hasNext()) {
+            final Integer oldest = iterator.next();
+            iterator.remove();
+            demote(oldest, DISCARD);
+            mDiscardCount++;
+            discarded++;
+        }
+        return discarded;
+    }
+
+    /**
+     * @return The maximum number of saved states, <tt>-1</tt> for no limit.
+     */
+    public int getMaxSaved() {
+        return mMaxSaved;
+    }
+
+    /**
+     * Demote the least recently used detached pages while too many are detached.
+     *
+     * @param keep The relative position of a page that should not be demoted, <code>null</code> for none.
+     * @return The number of pages demoted.
+     */
+    protected final int trimDetached(Integer keep) {
+        int demoted = 0;
+        final Iterator<Integer> iterator = mDetached.keySet().iterator();
+        while (isOverLimit(mDetached.size(), mDetachedSize) && iterator.hasNext()) {
+            final Integer oldest = iterator.next();
+            if (oldest.equals(keep)) {
+                break;
+            }
+            mDetachedSize -= mDetached.get(oldest);
+            iterator.remove();
+            demote(oldest, save(oldest) ? SAVE_STATE : DISCARD);
+            mDemotionCount++;
+            demoted++;
+        }
+        return demoted;
+    }
+
+    /**
+     * @return The number of pages currently detached.
+     */
+    public int getDetachedCount() {
+        return mDetached.size();
+    }
+
+    /**
+     * @return The total estimated size of the pages currently detached.
+     */
+    public long getDetachedSize() {
+        return mDetachedSize;
+    }
+
+    /**
+     * @return The number of pages currently kept as saved state.
+     */
+    public int getSavedCount() {
+        return mSaved.size();
+    }
+
+    /**
+     * @return The number of pages added again while detached, which were attached again at once.
+     */
+    public int getReattachCount() {
+        return mReattachCount;
+    }
+
+    /**
+     * @return The number of pages added again while kept as saved state, which were created again
+     * from their saved state.
+     */
+    public int getRestoreCount() {
+        return mRestoreCount;
+    }
+
+    /**
+     * @return The number of detached pages demoted to their saved state, or discarded if no more
+     * saved states could be kept, to keep within the limit of detached pages.
+     */
+    public int getDemotionCount() {
+        return mDemotionCount;
+    }
+
+    /**
+     * @return The number of saved states discarded to keep within the limit of saved states.
+     */
+    public int getDiscardCount() {
+        return mDiscardCount;
+    }
+
+    /**
+     * Keep the saved state of a page, discarding the least recently saved page if there are too
+     * many.
+     *
+     * @param position The relative position of the page.
+     * @return <tt>true</tt> if the state of the page is kept, <tt>false</tt> if it should be discarded.
+     */
+    private boolean save(int position) {
+        if (mMaxSaved == 0) {
+            return false;
+        }
+        mSaved.add(position);
+        if (mMaxSaved > 0 && mSaved.size() > mMaxSaved) {
+            final Iterator<Integer> iterator = mSaved.iterator();
+            final Integer oldest = iterator.next();
+            iterator.remove();
+            demote(oldest, DISCARD);
+            mDiscardCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Stop tracking a page.
+     *
+     * @param position The relative position of the page.
+     */
+    private void forget(int position) {
+        final Long size = mDetached.remove(position);
+        if (size != null) {
+            mDetachedSize -= size;
+        }
+        mSaved.remove(position);
+    }
+}
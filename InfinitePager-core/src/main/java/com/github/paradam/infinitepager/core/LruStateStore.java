@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A StateStore keeping the most recently used saved states, evicting the least recently used
+ * state once more than a set number of states are kept or their total approximate size exceeds a
+ * set number of bytes.</p>
+ *
+ * <p>The size of each state is given by {@link #sizeOf(Object)}, which by default is <tt>0</tt> so
+ * that only the number of states is limited. The number of hits, misses and evictions are counted
+ * to help choose the limits.</p>
+ *
+ * @param <T> The type of the saved state.
+ * @author Adam Parr
+ */
+public class LruStateStore<T> implements StateStore<T> {
+    /**
+     * A saved state and its approximate size.
+     *
+     * @param <T> The type of the saved state.
+     */
+    private static class Entry<T> {
+        /**
+         * The saved state.
+         */
+        final T state;
+
+        /**
+         * The approximate size of the state in bytes.
+         */
+        final long size;
+
+        /**
+         * @param state The saved state.
+         * @param size  The approximate size of the state in bytes.
+         */
+        Entry(T state, long size) {
+            this.state = state;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The saved states from least to most recently used, a state is moved to the end each time it
+     * is used.
+     */
+    private final LinkedHashMap<Integer, Entry<T>> mEntries = new LinkedHashMap<Integer, Entry<T>>();
+
+    /**
+     * The maximum number of states kept, <tt>-1</tt> for no limit.
+     */
+    private int mMaxCount;
+
+    /**
+     * The maximum total size of the states kept in bytes, <tt>-1</tt> for no limit.
+     */
+    private long mMaxSize;
+
+    /**
+     * The total size of the states kept in bytes.
+     */
+    private long mSize = 0;
+
+    /**
+     * The number of calls to {@link #get(int)} that returned a state.
+     */
+    private int mHitCount = 0;
+
+    /**
+     * The number of calls to {@link #get(int)} that did not return a state.
+     */
+    private int mMissCount = 0;
+
+    /**
+     * The number of states evicted to keep within the limits.
+     */
+    private int mEvictionCount = 0;
+
+    /**
+     * Constructor for a store without any limit.
+     */
+    public LruStateStore() {
+        this(-1, -1);
+    }
+
+    /**
+     * Constructor that accepts the maximum number of states and their maximum total size.
+     *
+     * @param maxCount The maximum number of states kept, <tt>-1</tt> for no limit.
+     * @param maxSize  The maximum total size of the states kept in bytes, <tt>-1</tt> for no limit.
+     */
+    public LruStateStore(int maxCount, long maxSize) {
+        mMaxCount = maxCount;
+        mMaxSize = maxSize;
+    }
+
+    @Override
+    public T get(int position) {
+        final Entry<T> entry = mEntries.remove(position);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mEntries.put(position, entry);
+        mHitCount++;
+        return entry.state;
+    }
+
+    @Override
+    public T peek(int position) {
+        final Entry<T> entry = mEntries.get(position);
+        return entry == null ? null : entry.state;
+    }
+
+    @Override
+    public void put(int position, T state) {
+        remove(position);
+        if (state == null) {
+            return;
+        }
+        final long size = sizeOf(state);
+        mEntries.put(position, new Entry<T>(state, size));
+        mSize += size;
+        trim();
+    }
+
+    @Override
+    public T remove(int position) {
+        final Entry<T> entry = mEntries.remove(position);
+        if (entry == null) {
+            return null;
+        }
+        mSize -= entry.size;
+        return entry.state;
+    }
+
+    /**
+     * The states are moved in place, without being counted as used or evicted.
+     */
+    @Override
+    public void move(int[] positions, int[] newPositions) {
+        if (positions.length != newPositions.length) {
+            throw new IllegalArgumentException("Invalid move: " + positions.length + " positions, " + newPositions.length + " new positions");
+        }
+        final HashMap<Integer, Integer> moves = new HashMap<Integer, Integer>(positions.length * 2);
+        final HashSet<Integer> targets = new HashSet<Integer>(positions.length * 2);
+        for (int x = 0; x < positions.length; x++) {
+            moves.put(positions[x], newPositions[x]);
+            targets.add(newPositions[x]);
+        }
+        final ArrayList<Map.Entry<Integer, Entry<T>>> entries = new ArrayList<Map.Entry<Integer, Entry<T>>>(mEntries.entrySet());
+        mEntries.clear();
+        for (Map.Entry<Integer, Entry<T>> entry : entries) {
+            final Integer moved = moves.get(entry.getKey());
+            final Entry<T> value = entry.getValue();
+            if (moved == null ? targets.contains(entry.getKey()) : moved < 0) {
+                mSize -= value.size;
+                continue;
+            }
+            final Entry<T> replaced = mEntries.put(moved == null ? entry.getKey() : moved, value);
+            if (replaced != null) {
+                mSize -= replaced.size;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    @Override
+    public int size() {
+        return mEntries.size();
+    }
+
+    @Override
+    public int[] positions() {
+        final int[] positions = new int[mEntries.size()];
+        int x = 0;
+        for (Integer position : mEntries.keySet()) {
+            positions[x++] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Get the approximate size of a saved state.
+     *
+     * <p>The default implementation returns <tt>0</tt>.</p>
+     *
+     * @param state The saved state.
+     * @return The size in bytes.
+     */
+    protected long sizeOf(T state) {
+        return 0;
+    }
+
+    /**
+     * Called when a state is evicted to keep within the limits.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param position The relative position of the page.
+     * @param state    The saved state evicted.
+     */
+    protected void onEvicted(int position, T state) {
+    }
+
+    /**
+     * Evict the least recently used states while over either limit.
+     */
+    private void trim() {
+        final Iterator<Map.Entry<Integer, Entry<T>>> iterator = mEntries.entrySet().iterator();
+        while (isOverLimit() && iterator.hasNext()) {
+            final Map.Entry<Integer, Entry<T>> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue().size;
+            mEvictionCount++;
+            onEvicted(eldest.getKey(), eldest.getValue().state);
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if more states are kept than allowed by either limit.
+     */
+    private boolean isOverLimit() {
+        return (mMaxCount >= 0 && mEntries.size() > mMaxCount) || (mMaxSize >= 0 && mSize > mMaxSize);
+    }
+
+    /**
+     * Set the maximum number of states kept, evicting the least recently used states if there are
+     * now too many.
+     *
+     * @param maxCount The maximum number of states kept, <tt>-1</tt> for no limit.
+     */
+    public void setMaxCount(int maxCount) {
+        mMaxCount = maxCount;
+        trim();
+    }
+
+    /**
+     * @return The maximum number of states kept, <tt>-1</tt> for no limit.
+     */
+    public int getMaxCount() {
+        return mMaxCount;
+    }
+
+    /**
+     * Set the maximum total size of the states kept, evicting the least recently used states if
+     * they no longer fit.
+     *
+     * @param maxSize The maximum total size of the states kept in bytes, <tt>-1</tt> for no limit.
+     */
+    public void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * @return The maximum total size of the states kept in bytes, <tt>-1</tt> for no limit.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return The total size of the states kept in bytes.
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of calls to {@link #get(int)} that returned a state.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of calls to {@link #get(int)} that did not return a state.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return The number of states evicted to keep within the limits.
+     */
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+}
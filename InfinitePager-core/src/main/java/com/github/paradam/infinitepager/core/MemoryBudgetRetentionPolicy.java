@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+/**
+ * <p>A RetentionPolicy that detaches the most recently left pages while their total estimated size
+ * fits within a budget, demoting the least recently used detached page to its saved state once the
+ * budget is exceeded. A page larger than the whole budget is kept only as saved state.</p>
+ *
+ * <p>The size of each page is estimated by the adapter, which by default is the memory needed to
+ * draw the page, subclasses of the adapter can give a better estimate.</p>
+ *
+ * @author Adam Parr
+ */
+public class MemoryBudgetRetentionPolicy extends LruRetentionPolicy {
+    /**
+     * The total estimated size in bytes that detached pages may hold.
+     */
+    private long mBudget;
+
+    /**
+     * Constructor that accepts the budget for the detached pages, keeping the saved state of every
+     * other page.
+     *
+     * @param budget The total estimated size in bytes that detached pages may hold.
+     */
+    public MemoryBudgetRetentionPolicy(long budget) {
+        this(budget, -1);
+    }
+
+    /**
+     * Constructor that accepts the budget for the detached pages and the maximum number of saved
+     * states.
+     *
+     * @param budget   The total estimated size in bytes that detached pages may hold.
+     * @param maxSaved The maximum number of saved states, <tt>-1</tt> for no limit.
+     */
+    public MemoryBudgetRetentionPolicy(long budget, int maxSaved) {
+        super(Integer.MAX_VALUE, maxSaved);
+        mBudget = budget;
+    }
+
+    @Override
+    protected boolean canDetach(long size) {
+        return super.canDetach(size) && size <= mBudget;
+    }
+
+    @Override
+    protected boolean isOverLimit(int count, long size) {
+        return super.isOverLimit(count, size) || size > mBudget;
+    }
+
+    /**
+     * Set the total estimated size in bytes that detached pages may hold, demoting the least
+     * recently used detached pages to their saved state if they no longer fit.
+     *
+     * @param budget The total estimated size in bytes that detached pages may hold.
+     * @return The number of pages demoted.
+     */
+    public int setBudget(long budget) {
+        mBudget = budget;
+        return trimDetached(null);
+    }
+
+    /**
+     * @return The total estimated size in bytes that detached pages may hold.
+     */
+    public long getBudget() {
+        return mBudget;
+    }
+}
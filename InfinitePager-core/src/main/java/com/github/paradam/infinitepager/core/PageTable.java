@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * <p>A sparse table of pages keyed by their relative position, which also indexes the position of
+ * each page so that finding the position of a page takes constant time rather than a search.</p>
+ *
+ * <p>The positions are held in a sorted array of primitive <tt>int</tt>s, so the memory used grows
+ * with the number of pages in the table rather than the largest position, and looking up a page
+ * is a binary search. Iterate the table in order of position with {@link #size()},
+ * {@link #keyAt(int)} and {@link #valueAt(int)}.</p>
+ *
+ * <p>Pages are compared by identity, as done by the Fragment classes, and a page can only be held
+ * at one position.</p>
+ *
+ * @param <T> The type of the pages.
+ * @author Adam Parr
+ */
+public class PageTable<T> {
+    /**
+     * The initial capacity of the table.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The sorted positions of the pages, valid up to {@link #mSize}.
+     */
+    private int[] mKeys = new int[INITIAL_CAPACITY];
+
+    /**
+     * The pages, in the same order as {@link #mKeys}.
+     */
+    private Object[] mValues = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The number of pages in the table.
+     */
+    private int mSize;
+
+    /**
+     * The relative position of each page.
+     */
+    private final IdentityHashMap<T, Integer> mPositions = new IdentityHashMap<T, Integer>();
+
+    /**
+     * @return The number of pages in the table.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index An index between <tt>0</tt> and {@link #size()}.
+     * @return The relative position of the page at the index, in ascending order.
+     */
+    public int keyAt(int index) {
+        return mKeys[index];
+    }
+
+    /**
+     * @param index An index between <tt>0</tt> and {@link #size()}.
+     * @return The page at the index.
+     */
+    @SuppressWarnings ("unchecked")
+    public T valueAt(int index) {
+        return (T) mValues[index];
+    }
+
+    /**
+     * Get the page at a position.
+     *
+     * @param position The relative position.
+     * @return The page, <code>null</code> if none is set.
+     */
+    @SuppressWarnings ("unchecked")
+    public T get(int position) {
+        final int index = Arrays.binarySearch(mKeys, 0, mSize, position);
+        return index >= 0 ? (T) mValues[index] : null;
+    }
+
+    /**
+     * Set the page at a position, replacing any page already set. If the page is already held at
+     * another position it is moved.
+     *
+     * @param position The relative position.
+     * @param page     The page, <code>null</code> to remove the page at the position.
+     */
+    public void set(int position, T page) {
+        if (page == null) {
+            remove(position);
+            return;
+        }
+        final Integer oldPosition = mPositions.get(page);
+        if (oldPosition != null && oldPosition != position) {
+            remove(oldPosition);
+        }
+
+        int index = Arrays.binarySearch(mKeys, 0, mSize, position);
+        if (index >= 0) {
+            final Object old = mValues[index];
+            if (old != page) {
+                mPositions.remove(old);
+            }
+        } else {
+            index = ~index;
+            if (mSize == mKeys.length) {
+                final int capacity = mSize * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mValues = Arrays.copyOf(mValues, capacity);
+            }
+            System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+            System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+            mKeys[index] = position;
+            mSize++;
+        }
+        mValues[index] = page;
+        mPositions.put(page, position);
+    }
+
+    /**
+     * Remove the page at a position.
+     *
+     * @param position The relative position.
+     * @return The page removed, <code>null</code> if none was set.
+     */
+    @SuppressWarnings ("unchecked")
+    public T remove(int position) {
+        final int index = Arrays.binarySearch(mKeys, 0, mSize, position);
+        if (index < 0) {
+            return null;
+        }
+        final T page = (T) mValues[index];
+        mPositions.remove(page);
+        mSize--;
+        System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index);
+        mValues[mSize] = null;
+        return page;
+    }
+
+    /**
+     * Get the position of a page.
+     *
+     * @param page The page.
+     * @return The relative position, <tt>-1</tt> if the page is not in the table.
+     */
+    public int indexOf(Object page) {
+        final Integer position = mPositions.get(page);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Remove every page.
+     */
+    public void clear() {
+        Arrays.fill(mValues, 0, mSize, null);
+        mSize = 0;
+        mPositions.clear();
+    }
+
+    /**
+     * Copy the pages to an array at their positions. Pages at positions beyond the end of the
+     * array are not copied.
+     *
+     * @param array The array to copy to.
+     * @return The array.
+     */
+    public T[] toArray(T[] array) {
+        for (int x = 0; x < mSize && mKeys[x] < array.length; x++) {
+            if (mKeys[x] >= 0) {
+                array[mKeys[x]] = valueAt(x);
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Describes a change to the pages of an adapter that leaves the rest of the data set as it was,
+ * such as pages being inserted, removed, moved or changed, mapping the relative position of each
+ * page before the change to its relative position after.</p>
+ *
+ * <p>Pages that were removed, or changed and so must be created again, map to {@link #NONE}.</p>
+ *
+ * <p>Changes made up of many inserts, removals and moves at once, such as between two lists of
+ * items, are worked out by {@link ListDiff} as a single update giving every page its new position.</p>
+ *
+ * @author Adam Parr
+ */
+public final class PageUpdate {
+    /**
+     * The position of a page that was removed or changed.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Pages were inserted.
+     */
+    private static final int INSERTED = 0;
+    /**
+     * Pages were removed.
+     */
+    private static final int REMOVED  = 1;
+    /**
+     * A page was moved.
+     */
+    private static final int MOVED    = 2;
+    /**
+     * Pages were changed.
+     */
+    private static final int CHANGED  = 3;
+    /**
+     * Every page was given a new position.
+     */
+    private static final int MAPPED   = 4;
+    /**
+     * One change followed by another.
+     */
+    private static final int CHAINED  = 5;
+
+    /**
+     * The type of change.
+     */
+    private final int mType;
+
+    /**
+     * The first position changed, or the position a page was moved from.
+     */
+    private final int mStart;
+
+    /**
+     * The number of pages changed, or the position a page was moved to.
+     */
+    private final int mCount;
+
+    /**
+     * The new position of each page if every page was given a new position, otherwise <tt>null</tt>.
+     */
+    private final int[] mNewPositions;
+
+    /**
+     * The position to show instead of each page if every page was given a new position, otherwise
+     * <tt>null</tt>.
+     */
+    private final int[] mTargetPositions;
+
+    /**
+     * The change made first if the change is made up of two changes, otherwise <tt>null</tt>.
+     */
+    private final PageUpdate mFirst;
+
+    /**
+     * The change made second if the change is made up of two changes, otherwise <tt>null</tt>.
+     */
+    private final PageUpdate mSecond;
+
+    /**
+     * Constructor that accepts the type and extent of the change.
+     *
+     * @param type  The type of change.
+     * @param start The first position changed, or the position a page was moved from.
+     * @param count The number of pages changed, or the position a page was moved to.
+     */
+    private PageUpdate(int type, int start, int count) {
+        if (start < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid update: start " + start + ", count " + count);
+        }
+        mType = type;
+        mStart = start;
+        mCount = count;
+        mNewPositions = null;
+        mTargetPositions = null;
+        mFirst = null;
+        mSecond = null;
+    }
+
+    /**
+     * Constructor that accepts the new position of every page.
+     *
+     * @param newPositions    The new position of each page, {@link #NONE} for pages removed or changed.
+     * @param targetPositions The position to show instead of each page, followed by the position to
+     *                        show instead of one past the last page.
+     */
+    private PageUpdate(int[] newPositions, int[] targetPositions) {
+        if (newPositions.length + 1 != targetPositions.length) {
+            throw new IllegalArgumentException("Invalid update: " + newPositions.length + " positions, " + targetPositions.length + " targets");
+        }
+        mType = MAPPED;
+        mStart = 0;
+        mCount = newPositions.length;
+        mNewPositions = newPositions;
+        mTargetPositions = targetPositions;
+        mFirst = null;
+        mSecond = null;
+    }
+
+    /**
+     * Constructor that accepts two changes made one after the other.
+     *
+     * @param first  The change made first.
+     * @param second The change made second.
+     */
+    private PageUpdate(PageUpdate first, PageUpdate second) {
+        mType = CHAINED;
+        mStart = 0;
+        mCount = 0;
+        mNewPositions = null;
+        mTargetPositions = null;
+        mFirst = first;
+        mSecond = second;
+    }
+
+    /**
+     * @param positionStart The position of the first page inserted.
+     * @param itemCount     The number of pages inserted.
+     * @return The change for pages inserted.
+     */
+    public static PageUpdate inserted(int positionStart, int itemCount) {
+        return new PageUpdate(INSERTED, positionStart, itemCount);
+    }
+
+    /**
+     * @param positionStart The position of the first page removed.
+     * @param itemCount     The number of pages removed.
+     * @return The change for pages removed.
+     */
+    public static PageUpdate removed(int positionStart, int itemCount) {
+        return new PageUpdate(REMOVED, positionStart, itemCount);
+    }
+
+    /**
+     * @param fromPosition The position the page was at.
+     * @param toPosition   The position the page is now at.
+     * @return The change for a page moved.
+     */
+    public static PageUpdate moved(int fromPosition, int toPosition) {
+        return new PageUpdate(MOVED, fromPosition, toPosition);
+    }
+
+    /**
+     * @param positionStart The position of the first page changed.
+     * @param itemCount     The number of pages changed.
+     * @return The change for pages changed.
+     */
+    public static PageUpdate changed(int positionStart, int itemCount) {
+        return new PageUpdate(CHANGED, positionStart, itemCount);
+    }
+
+    /**
+     * @param newPositions    The new position of each page, {@link #NONE} for pages removed or
+     *                        changed. Not copied.
+     * @param targetPositions The position to show instead of each page, as returned by
+     *                        {@link #getTargetPosition(int)}, followed by the position to show
+     *                        instead of one past the last page. Not copied.
+     * @return The change giving every page a new position.
+     */
+    static PageUpdate mapped(int[] newPositions, int[] targetPositions) {
+        return new PageUpdate(newPositions, targetPositions);
+    }
+
+    /**
+     * Get the change made by this change followed by another change, such as when several changes
+     * are told to the ViewPager at once.
+     *
+     * @param next The change made after this change.
+     * @return The two changes as one.
+     */
+    public PageUpdate then(PageUpdate next) {
+        return new PageUpdate(this, next);
+    }
+
+    /**
+     * Get the position of a page after the change.
+     *
+     * @param position The relative position of the page before the change.
+     * @return The relative position of the page after the change, {@link #NONE} if the page was
+     * removed or changed.
+     */
+    public int getNewPosition(int position) {
+        switch (mType) {
+            case INSERTED:
+                return position >= mStart ? position + mCount : position;
+            case REMOVED:
+                if (position < mStart) {
+                    return position;
+                }
+                return position < mStart + mCount ? NONE : position - mCount;
+            case MOVED:
+                if (position == mStart) {
+                    return mCount;
+                } else if (mStart < mCount && position > mStart && position <= mCount) {
+                    return position - 1;
+                } else if (mStart > mCount && position >= mCount && position < mStart) {
+                    return position + 1;
+                }
+                return position;
+            case MAPPED:
+                return position < mCount ? mNewPositions[position] : NONE;
+            case CHAINED:
+                final int newPosition = mFirst.getNewPosition(position);
+                return newPosition == NONE ? NONE : mSecond.getNewPosition(newPosition);
+            default:
+                return position >= mStart && position < mStart + mCount ? NONE : position;
+        }
+    }
+
+    /**
+     * Get the position a page being shown should be shown at after the change, such as the current
+     * page of the ViewPager.
+     *
+     * @param position The relative position of the page before the change.
+     * @return The relative position of the page after the change, the same position for a page that
+     * was changed, or for a page that was removed the position of the page that followed the pages
+     * removed, which is one past the last page if the last page was removed.
+     */
+    public int getTargetPosition(int position) {
+        if (mType == MAPPED) {
+            return position < mCount ? mTargetPositions[position] : mTargetPositions[mCount] + position - mCount;
+        } else if (mType == CHAINED) {
+            return mSecond.getTargetPosition(mFirst.getTargetPosition(position));
+        } else if (mType == CHANGED) {
+            return position;
+        } else if (mType == REMOVED && position >= mStart && position < mStart + mCount) {
+            return mStart;
+        }
+        return getNewPosition(position);
+    }
+
+    /**
+     * Move the pages of a table to their positions after the change, removing the pages that were
+     * removed or changed.
+     *
+     * @param table The table to update.
+     * @param <T>   The type of the pages.
+     */
+    public <T> void apply(PageTable<T> table) {
+        final ArrayList<T> moved = new ArrayList<T>();
+        final ArrayList<Integer> positions = new ArrayList<Integer>();
+        for (int x = table.size() - 1; x >= 0; x--) {
+            final int position = table.keyAt(x);
+            final int newPosition = getNewPosition(position);
+            if (newPosition != position) {
+                if (newPosition != NONE) {
+                    moved.add(table.valueAt(x));
+                    positions.add(newPosition);
+                }
+                table.remove(position);
+            }
+        }
+        for (int x = 0; x < moved.size(); x++) {
+            table.set(positions.get(x), moved.get(x));
+        }
+    }
+
+    /**
+     * Move the saved states of a store to their positions after the change, removing the states
+     * of pages that were removed or changed. The order of use of the states is kept.
+     *
+     * @param store The store to update.
+     * @param <T>   The type of the saved states.
+     */
+    public <T> void apply(StateStore<T> store) {
+        final int[] positions = store.positions();
+        final int[] newPositions = new int[positions.length];
+        for (int x = 0; x < positions.length; x++) {
+            newPositions[x] = getNewPosition(positions[x]);
+        }
+        store.move(positions, newPositions);
+    }
+
+    /**
+     * Move the keys of a map to their positions after the change, removing the entries of pages
+     * that were removed or changed. The iteration order of the map is kept.
+     *
+     * @param map The map keyed by relative position to update.
+     * @param <V> The type of the values.
+     */
+    public <V> void apply(Map<Integer, V> map) {
+        final LinkedHashMap<Integer, V> entries = new LinkedHashMap<Integer, V>(map);
+        map.clear();
+        for (Map.Entry<Integer, V> entry : entries.entrySet()) {
+            final int newPosition = getNewPosition(entry.getKey());
+            if (newPosition != NONE) {
+                map.put(newPosition, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Move the positions of a set to their positions after the change, removing the pages that
+     * were removed or changed. The iteration order of the set is kept.
+     *
+     * @param set The set of relative positions to update.
+     */
+    public void apply(Set<Integer> set) {
+        final ArrayList<Integer> positions = new ArrayList<Integer>(set);
+        set.clear();
+        for (Integer position : positions) {
+            final int newPosition = getNewPosition(position);
+            if (newPosition != NONE) {
+                set.add(newPosition);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+/**
+ * <p>Decides what is kept of a page once the ViewPager no longer needs it, trading the memory held
+ * by pages the user has left against how quickly they can be shown again.</p>
+ *
+ * <p>From cheapest to show again to cheapest to keep, a page can be:</p>
+ *
+ * <ul>
+ *     <li>{@link #DETACH} - kept as is with only its view hierarchy destroyed, such as a detached
+ *     Fragment.</li>
+ *     <li>{@link #SAVE_STATE} - kept only as its saved state, such as a removed Fragment and its
+ *     Fragment.SavedState.</li>
+ *     <li>{@link #DISCARD} - nothing is kept, the page is created again from scratch.</li>
+ * </ul>
+ *
+ * <p>The adapter asks the policy through {@link #onPageRemoved(int, long)} each time a page leaves
+ * the pager, and tells it through {@link #onPageAdded(int)} when a page is shown again. The policy
+ * may later move any page it has retained to a cheaper level through {@link #demote(int, int)},
+ * such as when too many pages are being kept.</p>
+ *
+ * <p>All positions are the relative positions of the pages.</p>
+ *
+ * @author Adam Parr
+ */
+public abstract class RetentionPolicy {
+    /**
+     * Keep the page with only its view hierarchy destroyed.
+     */
+    public static final int DETACH = 0;
+
+    /**
+     * Keep only the saved state of the page.
+     */
+    public static final int SAVE_STATE = 1;
+
+    /**
+     * Keep nothing of the page.
+     */
+    public static final int DISCARD = 2;
+
+    /**
+     * Interface implemented by adapters to be told when a retained page is moved to a cheaper
+     * level.
+     */
+    public interface Callback {
+        /**
+         * Called when a page retained by the policy is moved to a cheaper level.
+         *
+         * @param position  The relative position of the page.
+         * @param retention The new level of the page, {@link #SAVE_STATE} or {@link #DISCARD}.
+         */
+        void onRetentionChanged(int position, int retention);
+    }
+
+    /**
+     * The callback told about demoted pages.
+     */
+    private Callback mCallback = null;
+
+    /**
+     * Set the callback told about demoted pages, called by the adapter using this policy.
+     *
+     * @param callback The Callback, <code>null</code> to remove.
+     */
+    public final void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Move a page previously retained to a cheaper level, letting the adapter know.
+     *
+     * @param position  The relative position of the page.
+     * @param retention The new level of the page.
+     */
+    protected final void demote(int position, int retention) {
+        if (mCallback != null) {
+            mCallback.onRetentionChanged(position, retention);
+        }
+    }
+
+    /**
+     * Called when the ViewPager no longer needs a page, to decide what the adapter keeps of it.
+     *
+     * @param position The relative position of the page.
+     * @param size     An estimate in bytes of the memory held by the page while kept as {@link #DETACH}.
+     * @return One of {@link #DETACH}, {@link #SAVE_STATE} or {@link #DISCARD}.
+     */
+    public abstract int onPageRemoved(int position, long size);
+
+    /**
+     * Called when a page is shown again, it is no longer retained.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param position The relative position of the page.
+     */
+    public void onPageAdded(int position) {
+    }
+
+    /**
+     * Called when the primary page changes.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param position The relative position of the primary page.
+     * @param count    The number of relative pages.
+     */
+    public void onPrimaryChanged(int position, int count) {
+    }
+
+    /**
+     * Called when the positions of the pages are no longer known, such as when the data set has
+     * changed, forget every retained page without demoting it.
+     *
+     * <p>The default implementation does nothing.</p>
+     */
+    public void clear() {
+    }
+
+    /**
+     * Called when pages are inserted, removed, moved or changed without the rest of the data set
+     * changing, so the retained pages can follow their new positions. The adapter removes what it
+     * kept of the pages that were removed or changed without the policy demoting them.
+     *
+     * <p>The default implementation forgets every retained page through {@link #clear()}.</p>
+     *
+     * @param update The change to the positions of the pages.
+     */
+    public void onPositionsChanged(PageUpdate update) {
+        clear();
+    }
+
+    /**
+     * Check the given value is a valid level of retention.
+     *
+     * @param retention The level to check.
+     * @return The level.
+     * @throws IllegalArgumentException if not one of {@link #DETACH}, {@link #SAVE_STATE} or
+     *                                  {@link #DISCARD}.
+     */
+    protected static int checkRetention(int retention) {
+        if (retention < DETACH || retention > DISCARD) {
+            throw new IllegalArgumentException("Unknown retention: " + retention);
+        }
+        return retention;
+    }
+}
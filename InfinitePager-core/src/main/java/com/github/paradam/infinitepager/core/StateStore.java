@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+/**
+ * <p>Holds the saved state of the pages that are no longer instantiated, keyed by their relative
+ * position.</p>
+ *
+ * <p>A store may choose not to keep every state given to it, such as when it is bounded, in which
+ * case {@link #get(int)} returns <code>null</code> and the page is created again from scratch.</p>
+ *
+ * @param <T> The type of the saved state.
+ * @author Adam Parr
+ */
+public interface StateStore<T> {
+    /**
+     * Get the saved state of a page.
+     *
+     * @param position The relative position of the page.
+     * @return The saved state, <code>null</code> if none is kept.
+     */
+    T get(int position);
+
+    /**
+     * Get the saved state of a page without counting it as a use, such as when saving the state of
+     * the adapter.
+     *
+     * @param position The relative position of the page.
+     * @return The saved state, <code>null</code> if none is kept.
+     */
+    T peek(int position);
+
+    /**
+     * Keep the saved state of a page, replacing any state already kept.
+     *
+     * @param position The relative position of the page.
+     * @param state    The saved state, <code>null</code> to remove the state kept.
+     */
+    void put(int position, T state);
+
+    /**
+     * Remove the saved state of a page.
+     *
+     * @param position The relative position of the page.
+     * @return The saved state removed, <code>null</code> if none was kept.
+     */
+    T remove(int position);
+
+    /**
+     * Move saved states to new positions at once, such as when the pages have moved, without
+     * changing their order of use. States not given a new position keep their position, unless a
+     * moved state is moved onto it.
+     *
+     * @param positions    The positions of the states to move.
+     * @param newPositions The new position of each state, a negative position to remove the state.
+     */
+    void move(int[] positions, int[] newPositions);
+
+    /**
+     * Remove every saved state.
+     */
+    void clear();
+
+    /**
+     * @return The number of saved states kept.
+     */
+    int size();
+
+    /**
+     * Get the positions of every saved state kept, in the order they should be put back into a
+     * store to keep their order of use.
+     *
+     * @return The relative positions.
+     */
+    int[] positions();
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A RetentionPolicy that keeps pages depending on how far they are from the primary page,
+ * wrapping around the ends of the list. Pages within a set distance are detached, pages within a
+ * further distance are kept as saved state and any page beyond is discarded. As the primary page
+ * moves, retained pages left too far behind are demoted.</p>
+ *
+ * @author Adam Parr
+ */
+public class WindowRetentionPolicy extends RetentionPolicy {
+    /**
+     * The furthest distance from the primary page a page is kept detached.
+     */
+    private final int mDetachDistance;
+
+    /**
+     * The furthest distance from the primary page a page is kept as saved state.
+     */
+    private final int mStateDistance;
+
+    /**
+     * The retained pages mapped to their current level.
+     */
+    private final LinkedHashMap<Integer, Integer> mRetained = new LinkedHashMap<Integer, Integer>();
+
+    /**
+     * The relative position of the primary page, <tt>-1</tt> if not yet known.
+     */
+    private int mPrimary = -1;
+
+    /**
+     * The number of relative pages.
+     */
+    private int mCount = 0;
+
+    /**
+     * Constructor that accepts the distances from the primary page within which pages are kept.
+     *
+     * @param detachDistance The furthest distance from the primary page a page is kept detached.
+     * @param stateDistance  The furthest distance from the primary page a page is kept as saved
+     *                       state, pages further away are discarded.
+     */
+    public WindowRetentionPolicy(int detachDistance, int stateDistance) {
+        mDetachDistance = detachDistance;
+        mStateDistance = Math.max(detachDistance, stateDistance);
+    }
+
+    @Override
+    public int onPageRemoved(int position, long size) {
+        final int retention = getRetention(position);
+        if (retention == DISCARD) {
+            mRetained.remove(position);
+        } else {
+            mRetained.put(position, retention);
+        }
+        return retention;
+    }
+
+    @Override
+    public void onPageAdded(int position) {
+        mRetained.remove(position);
+    }
+
+    @Override
+    public void onPrimaryChanged(int position, int count) {
+        mPrimary = position;
+        mCount = count;
+        final Iterator<Map.Entry<Integer, Integer>> iterator = mRetained.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Integer, Integer> entry = iterator.next();
+            final int retention = getRetention(entry.getKey());
+            if (retention > entry.getValue()) {
+                if (retention == DISCARD) {
+                    iterator.remove();
+                } else {
+                    entry.setValue(retention);
+                }
+                demote(entry.getKey(), retention);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        mRetained.clear();
+    }
+
+    @Override
+    public void onPositionsChanged(PageUpdate update) {
+        update.apply(mRetained);
+        if (mPrimary >= 0) {
+            // Follow a removed primary page to the page shown in its place, the adapter then tells
+            // the new primary page and count through onPrimaryChanged.
+            mPrimary = update.getTargetPosition(mPrimary);
+        }
+    }
+
+    /**
+     * Get the level a page should be kept at for its distance from the primary page.
+     *
+     * @param position The relative position of the page.
+     * @return One of {@link #DETACH}, {@link #SAVE_STATE} or {@link #DISCARD}.
+     */
+    private int getRetention(int position) {
+        if (mPrimary < 0) {
+            return DETACH;
+        }
+        int distance = Math.abs(position - mPrimary);
+        if (mCount > 0) {
+            distance = Math.min(distance, mCount - distance);
+        }
+        if (distance <= mDetachDistance) {
+            return DETACH;
+        }
+        return distance <= mStateDistance ? SAVE_STATE : DISCARD;
+    }
+}
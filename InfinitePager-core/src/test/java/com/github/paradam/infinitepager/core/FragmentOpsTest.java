@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FragmentOps}.
+ *
+ * @author Adam Parr
+ */
+public class FragmentOpsTest {
+    /**
+     * A target recording each operation as <tt>type:fragment</tt>.
+     */
+    private static class RecordingTarget implements FragmentOps.Target<String> {
+        final List<String> ops = new ArrayList<String>();
+
+        @Override
+        public void add(int containerId, String fragment, String tag) {
+            ops.add("add:" + fragment + ":" + containerId + ":" + tag);
+        }
+
+        @Override
+        public void attach(String fragment) {
+            ops.add("attach:" + fragment);
+        }
+
+        @Override
+        public void detach(String fragment) {
+            ops.add("detach:" + fragment);
+        }
+
+        @Override
+        public void remove(String fragment) {
+            ops.add("remove:" + fragment);
+        }
+    }
+
+    @Test
+    public void testCommitInOrder() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        ops.add(1, "a", "tag");
+        ops.detach("b");
+        ops.remove("c");
+        final RecordingTarget target = new RecordingTarget();
+        ops.commitTo(target);
+        assertEquals(Arrays.asList("add:a:1:tag", "detach:b", "remove:c"), target.ops);
+        assertTrue(ops.isEmpty());
+    }
+
+    @Test
+    public void testOppositeOperationsCancel() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        ops.detach("a");
+        ops.attach("a");
+        ops.add(1, "b");
+        ops.remove("b");
+        assertTrue(ops.isEmpty());
+    }
+
+    @Test
+    public void testOnlyLastOperationCancels() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        ops.detach("a");
+        ops.remove("a");
+        ops.attach("a");
+        assertEquals(3, ops.size());
+    }
+
+    @Test
+    public void testSplit() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        ops.detach("a");
+        ops.attach("b");
+        ops.remove("c");
+        final FragmentOps<String> split = ops.split("b");
+        assertEquals(1, split.size());
+        assertTrue(split.contains("b"));
+        assertFalse(ops.contains("b"));
+        assertEquals("a", ops.fragmentAt(0));
+        assertEquals("c", ops.fragmentAt(1));
+        final RecordingTarget target = new RecordingTarget();
+        ops.commitTo(target);
+        assertEquals(Arrays.asList("detach:a", "remove:c"), target.ops);
+        assertTrue(ops.split(null).isEmpty());
+    }
+
+    @Test
+    public void testAddAll() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        final FragmentOps<String> other = new FragmentOps<String>();
+        ops.detach("a");
+        other.detach("b");
+        ops.addAll(other);
+        assertTrue(other.isEmpty());
+        assertEquals(2, ops.size());
+        assertTrue(ops.contains("b"));
+    }
+
+    @Test
+    public void testAddAllCancelsOpposingOperations() {
+        final FragmentOps<String> ops = new FragmentOps<String>();
+        final FragmentOps<String> other = new FragmentOps<String>();
+        ops.detach("a");
+        other.attach("a");
+        other.detach("b");
+        ops.addAll(other);
+        assertTrue(other.isEmpty());
+        assertEquals(1, ops.size());
+        assertFalse(ops.contains("a"));
+        assertTrue(ops.contains("b"));
+    }
+}
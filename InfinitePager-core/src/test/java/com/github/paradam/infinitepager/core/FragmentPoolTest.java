@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FragmentPool}.
+ *
+ * @author Adam Parr
+ */
+public class FragmentPoolTest {
+    @Test
+    public void testTakeByClassAndType() {
+        final FragmentPool<Object> pool = new FragmentPool<Object>(2);
+        final StringBuilder fragment = new StringBuilder();
+        assertTrue(pool.put(1, fragment));
+        assertNull(pool.take(StringBuilder.class, 0, null));
+        assertNull(pool.take(String.class, 1, null));
+        assertSame(fragment, pool.take(StringBuilder.class, 1, null));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testMaxPerType() {
+        final FragmentPool<Object> pool = new FragmentPool<Object>(1);
+        assertTrue(pool.put(0, new StringBuilder()));
+        assertFalse(pool.put(0, new StringBuilder()));
+        assertTrue(pool.put(1, new StringBuilder()));
+        assertEquals(2, pool.size());
+        assertFalse(new FragmentPool<Object>(0).put(0, new StringBuilder()));
+    }
+
+    @Test
+    public void testSetMaxPerTypeDropsOldest() {
+        final FragmentPool<Object> pool = new FragmentPool<Object>(2);
+        final StringBuilder first = new StringBuilder();
+        final StringBuilder second = new StringBuilder();
+        pool.put(0, first);
+        pool.put(0, second);
+        pool.setMaxPerType(1);
+        assertEquals(1, pool.size());
+        assertSame(second, pool.take(StringBuilder.class, 0, null));
+    }
+
+    @Test
+    public void testPendingFragmentNotTaken() {
+        final FragmentPool<Object> pool = new FragmentPool<Object>(2);
+        final StringBuilder fragment = new StringBuilder();
+        pool.put(0, fragment);
+        final FragmentOps<Object> pending = new FragmentOps<Object>();
+        pending.remove(fragment);
+        assertNull(pool.take(StringBuilder.class, 0, pending));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testRemove() {
+        final FragmentPool<Object> pool = new FragmentPool<Object>(2);
+        final StringBuilder fragment = new StringBuilder();
+        pool.put(0, fragment);
+        assertFalse(pool.put(0, fragment));
+        assertTrue(pool.remove(fragment));
+        assertFalse(pool.remove(fragment));
+        assertEquals(0, pool.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMax() {
+        new FragmentPool<Object>(-1);
+    }
+}
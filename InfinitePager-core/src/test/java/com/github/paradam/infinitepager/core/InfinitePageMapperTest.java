@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link InfinitePageMapper}.
+ *
+ * @author Adam Parr
+ */
+public class InfinitePageMapperTest {
+    @Test
+    public void testEmpty() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        mapper.setCount(0);
+        assertEquals(0, mapper.getMargin());
+        assertEquals(0, mapper.getCount());
+        assertEquals(0, mapper.getRelativePosition(0));
+        assertEquals(0, mapper.getRelativePosition(5));
+        assertFalse(mapper.isWrapped(0, 0));
+        assertEquals(0, mapper.getTargetPosition(0, 0, 0));
+        assertTrue(mapper.isInstantiable(0, 0));
+        assertFalse(mapper.isInstantiable(1, 0));
+        assertFalse(mapper.isDestroyable(0));
+    }
+
+    @Test
+    public void testBelowMinimum() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        mapper.setCount(InfinitePageMapper.MIN - 1);
+        assertEquals(0, mapper.getMargin());
+        assertEquals(3, mapper.getCount());
+        for (int x = 0; x < 3; x++) {
+            assertEquals(x, mapper.getRelativePosition(x));
+            assertFalse(mapper.isWrapped(x, 3));
+        }
+        // Moving from the first to the last page does not wrap.
+        assertEquals(2, mapper.getTargetPosition(0, 2, 3));
+        assertEquals(0, mapper.getTargetPosition(2, 0, 3));
+        assertTrue(mapper.isInstantiable(-1, 3));
+        assertTrue(mapper.isInstantiable(3, 3));
+        assertFalse(mapper.isInstantiable(-2, 3));
+        assertFalse(mapper.isInstantiable(4, 3));
+        mapper.setPrimaryPosition(0);
+        assertFalse(mapper.isDestroyable(1));
+        assertTrue(mapper.isDestroyable(2));
+    }
+
+    @Test
+    public void testMinimum() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        mapper.setCount(InfinitePageMapper.MIN);
+        assertEquals(InfinitePageMapper.MARGIN, mapper.getMargin());
+        assertEquals(8, mapper.getCount());
+        final int[] relative = {2, 3, 0, 1, 2, 3, 0, 1};
+        for (int x = 0; x < relative.length; x++) {
+            assertEquals(relative[x], mapper.getRelativePosition(x));
+            assertEquals(x < 2 || x > 5, mapper.isWrapped(x, 4));
+            assertTrue(mapper.isInstantiable(x, 4));
+        }
+        assertFalse(mapper.isInstantiable(-1, 4));
+        assertFalse(mapper.isInstantiable(8, 4));
+        assertEquals(2, mapper.getPosition(0));
+
+        // Moving directly between the first and last page moves onto the additional pages.
+        assertEquals(1, mapper.getTargetPosition(2, 3, 4));
+        assertEquals(6, mapper.getTargetPosition(5, 0, 4));
+        assertEquals(4, mapper.getTargetPosition(3, 2, 4));
+        // From an additional page the pager returns to the real page.
+        assertEquals(2, mapper.getTargetPosition(6, 0, 4));
+
+        // Pages that are the same relative page as one kept around the primary item are kept.
+        mapper.setPrimaryPosition(2);
+        assertFalse(mapper.isDestroyable(5));
+        assertFalse(mapper.isDestroyable(6));
+        assertFalse(mapper.isDestroyable(7));
+        assertTrue(mapper.isDestroyable(1));
+        assertTrue(mapper.isDestroyable(3));
+        assertFalse(mapper.isDestroyable(8));
+    }
+
+    @Test
+    public void testNotInfinite() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        mapper.setInfinite(false);
+        mapper.setCount(10);
+        assertEquals(0, mapper.getMargin());
+        assertEquals(10, mapper.getCount());
+        assertEquals(9, mapper.getTargetPosition(0, 9, 10));
+        mapper.setInfinite(true);
+        assertEquals(InfinitePageMapper.MARGIN, mapper.getMargin());
+    }
+
+    @Test
+    public void testVirtual() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        mapper.setVirtual(true);
+        mapper.setCount(4);
+        assertTrue(mapper.isVirtual());
+        // The margin is a multiple of the count, so the middle is the first real page.
+        final int margin = mapper.getMargin();
+        assertEquals(InfinitePageMapper.VIRTUAL_COUNT / 2, margin);
+        assertEquals(4 + margin * 2, mapper.getCount());
+        assertEquals(0, mapper.getRelativePosition(margin));
+        assertEquals(3, mapper.getRelativePosition(margin - 1));
+        assertEquals(1, mapper.getRelativePosition(margin + 5));
+
+        // Only positions close to either end have wrapped.
+        assertFalse(mapper.isWrapped(margin, 4));
+        assertFalse(mapper.isWrapped(margin - 100, 4));
+        assertTrue(mapper.isWrapped(0, 4));
+        assertTrue(mapper.isWrapped(mapper.getCount() - 1, 4));
+
+        // Moves are made relative to the current position.
+        assertEquals(margin + 6, mapper.getTargetPosition(margin + 5, 2, 4));
+        assertEquals(margin - 1, mapper.getTargetPosition(margin, 3, 4));
+        assertEquals(margin + 4, mapper.getTargetPosition(margin + 3, 0, 4));
+        // Once wrapped the pager is moved back to the real pages.
+        assertEquals(margin + 2, mapper.getTargetPosition(1, 2, 4));
+
+        assertTrue(mapper.isInstantiable(0, 4));
+        assertTrue(mapper.isInstantiable(mapper.getCount() - 1, 4));
+        assertFalse(mapper.isInstantiable(mapper.getCount(), 4));
+        mapper.setPrimaryPosition(margin);
+        assertTrue(mapper.isDestroyable(margin + 1000));
+        assertFalse(mapper.isDestroyable(-1));
+        assertFalse(mapper.isDestroyable(mapper.getCount()));
+
+        final InfinitePageMapper uneven = new InfinitePageMapper();
+        uneven.setVirtual(true);
+        uneven.setCount(5);
+        assertEquals(0, uneven.getMargin() % 5);
+        assertEquals(0, uneven.getRelativePosition(uneven.getMargin()));
+
+        mapper.setCount(InfinitePageMapper.MIN - 1);
+        assertEquals(0, mapper.getMargin());
+        mapper.setVirtual(false);
+        mapper.setCount(4);
+        assertEquals(InfinitePageMapper.MARGIN, mapper.getMargin());
+    }
+
+    @Test
+    public void testOffscreenPageLimits() {
+        final InfinitePageMapper mapper = new InfinitePageMapper();
+        assertEquals(InfinitePageMapper.MIN, mapper.getMinimumCount());
+        mapper.setOffscreenPageLimit(0);
+        assertEquals(1, mapper.getOffscreenPageLimit());
+        for (int limit = 1; limit <= 4; limit++) {
+            mapper.setOffscreenPageLimit(limit);
+            final int min = mapper.getMinimumCount();
+            assertEquals(limit * 2 + 2, min);
+
+            mapper.setCount(min - 1);
+            assertEquals(0, mapper.getMargin());
+
+            mapper.setCount(min);
+            final int margin = mapper.getMargin();
+            assertEquals(limit + 1, margin);
+            assertEquals(min + margin * 2, mapper.getCount());
+            assertEquals(0, mapper.getRelativePosition(margin));
+            assertEquals(min - 1, mapper.getRelativePosition(margin - 1));
+            assertTrue(mapper.isWrapped(margin - 1, min));
+            assertFalse(mapper.isWrapped(margin, min));
+            assertFalse(mapper.isWrapped(margin + min - 1, min));
+            assertTrue(mapper.isWrapped(margin + min, min));
+            assertTrue(mapper.isInstantiable(0, min));
+            assertTrue(mapper.isInstantiable(mapper.getCount() - 1, min));
+            assertFalse(mapper.isInstantiable(mapper.getCount(), min));
+            assertEquals(margin - 1, mapper.getTargetPosition(margin, min - 1, min));
+            assertEquals(margin + min, mapper.getTargetPosition(margin + min - 1, 0, min));
+
+            // Every page the pager keeps around the first page has a copy that must be kept.
+            mapper.setPrimaryPosition(margin);
+            for (int distance = 1; distance <= limit; distance++) {
+                assertFalse(mapper.isDestroyable(margin + min - distance));
+                assertFalse(mapper.isDestroyable(margin + min + distance));
+            }
+            assertTrue(mapper.isDestroyable(margin + min - limit - 1));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ListDiff}.
+ *
+ * @author Adam Parr
+ */
+public class ListDiffTest {
+    /**
+     * Compares items by their first character, and their contents by the whole string.
+     */
+    private static final ListDiff.ItemCallback<String> CALLBACK = new ListDiff.ItemCallback<String>() {
+        @Override
+        public boolean areItemsTheSame(String oldItem, String newItem) {
+            return oldItem.charAt(0) == newItem.charAt(0);
+        }
+
+        @Override
+        public boolean areContentsTheSame(String oldItem, String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    @Test
+    public void testUnchanged() {
+        final PageUpdate update = diff("abcde", "abcde", false);
+        for (int x = 0; x < 5; x++) {
+            assertEquals(x, update.getNewPosition(x));
+            assertEquals(x, update.getTargetPosition(x));
+        }
+    }
+
+    @Test
+    public void testInserted() {
+        final PageUpdate update = diff("abc", "axybc", false);
+        assertEquals(0, update.getNewPosition(0));
+        assertEquals(3, update.getNewPosition(1));
+        assertEquals(4, update.getNewPosition(2));
+    }
+
+    @Test
+    public void testRemoved() {
+        final PageUpdate update = diff("abcde", "ade", false);
+        assertEquals(0, update.getNewPosition(0));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(1));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(2));
+        assertEquals(1, update.getNewPosition(3));
+        assertEquals(2, update.getNewPosition(4));
+        // A removed page is replaced by the next page kept.
+        assertEquals(1, update.getTargetPosition(1));
+        assertEquals(1, update.getTargetPosition(2));
+    }
+
+    @Test
+    public void testRemovedFromEnd() {
+        final PageUpdate update = diff("abcd", "ab", false);
+        assertEquals(PageUpdate.NONE, update.getNewPosition(2));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(3));
+        assertEquals(2, update.getTargetPosition(2));
+        assertEquals(2, update.getTargetPosition(3));
+    }
+
+    @Test
+    public void testTargetPastEnd() {
+        final PageUpdate update = diff("abc", "xabc", false);
+        assertEquals(PageUpdate.NONE, update.getNewPosition(3));
+        assertEquals(4, update.getTargetPosition(3));
+        assertEquals(6, update.getTargetPosition(5));
+    }
+
+    @Test
+    public void testChanged() {
+        final PageUpdate update = diff("abc", Arrays.asList("a", "b2", "c"), false);
+        assertEquals(0, update.getNewPosition(0));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(1));
+        assertEquals(2, update.getNewPosition(2));
+        assertEquals(1, update.getTargetPosition(1));
+    }
+
+    @Test
+    public void testMoved() {
+        final PageUpdate withoutMoves = diff("abcd", "bcda", false);
+        assertEquals(PageUpdate.NONE, withoutMoves.getNewPosition(0));
+        assertEquals(0, withoutMoves.getNewPosition(1));
+
+        final PageUpdate withMoves = diff("abcd", "bcda", true);
+        assertEquals(3, withMoves.getNewPosition(0));
+        assertEquals(3, withMoves.getTargetPosition(0));
+        assertEquals(0, withMoves.getNewPosition(1));
+        assertEquals(1, withMoves.getNewPosition(2));
+        assertEquals(2, withMoves.getNewPosition(3));
+    }
+
+    @Test
+    public void testEmpty() {
+        final PageUpdate fromEmpty = diff("", "abc", false);
+        assertEquals(3, fromEmpty.getTargetPosition(0));
+
+        final PageUpdate toEmpty = diff("abc", "", false);
+        for (int x = 0; x < 3; x++) {
+            assertEquals(PageUpdate.NONE, toEmpty.getNewPosition(x));
+            assertEquals(0, toEmpty.getTargetPosition(x));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstLongestCommonSubsequence() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            final String oldItems = randomItems(random);
+            final String newItems = randomItems(random);
+            final PageUpdate update = diff(oldItems, newItems, false);
+
+            int matched = 0;
+            int last = -1;
+            for (int x = 0; x < oldItems.length(); x++) {
+                final int newPosition = update.getNewPosition(x);
+                if (newPosition == PageUpdate.NONE) {
+                    continue;
+                }
+                assertEquals(oldItems.charAt(x), newItems.charAt(newPosition));
+                assertTrue("Kept pages out of order: " + oldItems + " -> " + newItems, newPosition > last);
+                last = newPosition;
+                matched++;
+            }
+            assertEquals(oldItems + " -> " + newItems, longestCommonSubsequence(oldItems, newItems), matched);
+
+            final PageUpdate withMoves = diff(oldItems, newItems, true);
+            for (int x = 0; x < oldItems.length(); x++) {
+                final int newPosition = withMoves.getNewPosition(x);
+                if (newItems.indexOf(oldItems.charAt(x)) >= 0) {
+                    assertEquals(newItems.indexOf(oldItems.charAt(x)), newPosition);
+                } else {
+                    assertEquals(PageUpdate.NONE, newPosition);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @return Up to ten distinct items chosen from twelve.
+     */
+    private static String randomItems(Random random) {
+        final StringBuilder items = new StringBuilder();
+        final int length = random.nextInt(11);
+        while (items.length() < length) {
+            final char item = (char) ('a' + random.nextInt(12));
+            if (items.indexOf(String.valueOf(item)) < 0) {
+                items.append(item);
+            }
+        }
+        return items.toString();
+    }
+
+    /**
+     * @param a The first list of items.
+     * @param b The second list of items.
+     * @return The length of the longest common subsequence of the lists.
+     */
+    private static int longestCommonSubsequence(String a, String b) {
+        final int[][] lengths = new int[a.length() + 1][b.length() + 1];
+        for (int x = a.length() - 1; x >= 0; x--) {
+            for (int y = b.length() - 1; y >= 0; y--) {
+                lengths[x][y] = a.charAt(x) == b.charAt(y) ? lengths[x + 1][y + 1] + 1 : Math.max(lengths[x + 1][y], lengths[x][y + 1]);
+            }
+        }
+        return lengths[0][0];
+    }
+
+    /**
+     * @param oldItems    The old items, one per character.
+     * @param newItems    The new items, one per character.
+     * @param detectMoves <tt>true</tt> to look for moved items.
+     * @return The change between the lists.
+     */
+    private static PageUpdate diff(String oldItems, String newItems, boolean detectMoves) {
+        return diff(oldItems, toList(newItems), detectMoves);
+    }
+
+    /**
+     * @param oldItems    The old items, one per character.
+     * @param newItems    The new items.
+     * @param detectMoves <tt>true</tt> to look for moved items.
+     * @return The change between the lists.
+     */
+    private static PageUpdate diff(String oldItems, List<String> newItems, boolean detectMoves) {
+        return ListDiff.calculate(toList(oldItems), newItems, CALLBACK, detectMoves);
+    }
+
+    /**
+     * @param items The items, one per character.
+     * @return The items as a list.
+     */
+    private static List<String> toList(String items) {
+        final ArrayList<String> list = new ArrayList<String>();
+        for (int x = 0; x < items.length(); x++) {
+            list.add(String.valueOf(items.charAt(x)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.github.paradam.infinitepager.core.RetentionPolicy.DETACH;
+import static com.github.paradam.infinitepager.core.RetentionPolicy.DISCARD;
+import static com.github.paradam.infinitepager.core.RetentionPolicy.SAVE_STATE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link LruRetentionPolicy}.
+ *
+ * @author Adam Parr
+ */
+public class LruRetentionPolicyTest {
+    private LruRetentionPolicy mPolicy;
+    private RecordingCallback mCallback;
+
+    @Before
+    public void setUp() {
+        mPolicy = new LruRetentionPolicy(2, 2);
+        mCallback = new RecordingCallback();
+        mPolicy.setCallback(mCallback);
+    }
+
+    @Test
+    public void testDemotesLeastRecentlyDetached() {
+        assertEquals(DETACH, mPolicy.onPageRemoved(0, 0));
+        assertEquals(DETACH, mPolicy.onPageRemoved(1, 0));
+        assertEquals(DETACH, mPolicy.onPageRemoved(2, 0));
+        assertEquals(Arrays.asList("0:" + SAVE_STATE), mCallback.demotions);
+        assertEquals(2, mPolicy.getDetachedCount());
+        assertEquals(1, mPolicy.getSavedCount());
+        assertEquals(1, mPolicy.getDemotionCount());
+    }
+
+    @Test
+    public void testDiscardsLeastRecentlySaved() {
+        // Saving the state of page 2 discards page 0 before page 2 is reported demoted.
+        for (int x = 0; x < 5; x++) {
+            mPolicy.onPageRemoved(x, 0);
+        }
+        assertEquals(Arrays.asList("0:" + SAVE_STATE, "1:" + SAVE_STATE, "0:" + DISCARD, "2:" + SAVE_STATE), mCallback.demotions);
+        assertEquals(2, mPolicy.getSavedCount());
+        assertEquals(1, mPolicy.getDiscardCount());
+    }
+
+    @Test
+    public void testAddedPageIsForgotten() {
+        mPolicy.onPageRemoved(0, 0);
+        mPolicy.onPageRemoved(1, 0);
+        mPolicy.onPageAdded(0);
+        assertEquals(1, mPolicy.getReattachCount());
+        mPolicy.onPageRemoved(2, 0);
+        assertEquals(Collections.<String>emptyList(), mCallback.demotions);
+        assertEquals(2, mPolicy.getDetachedCount());
+    }
+
+    @Test
+    public void testRestoreCounted() {
+        mPolicy.onPageRemoved(0, 0);
+        mPolicy.onPageRemoved(1, 0);
+        mPolicy.onPageRemoved(2, 0);
+        mPolicy.onPageAdded(0);
+        assertEquals(1, mPolicy.getRestoreCount());
+        assertEquals(0, mPolicy.getSavedCount());
+    }
+
+    @Test
+    public void testNoDetachedPages() {
+        final LruRetentionPolicy policy = new LruRetentionPolicy(0, 0);
+        assertEquals(DISCARD, policy.onPageRemoved(0, 0));
+        assertEquals(SAVE_STATE, new LruRetentionPolicy(0).onPageRemoved(0, 0));
+    }
+
+    @Test
+    public void testSetMaxDetached() {
+        mPolicy.onPageRemoved(0, 0);
+        mPolicy.onPageRemoved(1, 0);
+        assertEquals(2, mPolicy.setMaxDetached(0));
+        assertEquals(Arrays.asList("0:" + SAVE_STATE, "1:" + SAVE_STATE), mCallback.demotions);
+        assertEquals(0, mPolicy.getDetachedCount());
+    }
+
+    @Test
+    public void testSetMaxSaved() {
+        mPolicy.setMaxDetached(0);
+        mPolicy.onPageRemoved(0, 0);
+        mPolicy.onPageRemoved(1, 0);
+        assertEquals(1, mPolicy.setMaxSaved(1));
+        assertEquals(Arrays.asList("0:" + DISCARD), mCallback.demotions);
+    }
+
+    @Test
+    public void testPositionsChanged() {
+        mPolicy.onPageRemoved(0, 10);
+        mPolicy.onPageRemoved(3, 20);
+        mPolicy.onPositionsChanged(PageUpdate.removed(0, 1));
+        mPolicy.onPositionsChanged(PageUpdate.inserted(0, 2));
+        assertEquals(1, mPolicy.getDetachedCount());
+        assertEquals(20, mPolicy.getDetachedSize());
+        mPolicy.onPageAdded(4);
+        assertEquals(0, mPolicy.getDetachedCount());
+        assertEquals(1, mPolicy.getReattachCount());
+    }
+
+    @Test
+    public void testClear() {
+        mPolicy.onPageRemoved(0, 10);
+        mPolicy.onPageRemoved(1, 10);
+        mPolicy.onPageRemoved(2, 10);
+        mPolicy.clear();
+        assertEquals(0, mPolicy.getDetachedCount());
+        assertEquals(0, mPolicy.getSavedCount());
+        assertEquals(0, mPolicy.getDetachedSize());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link LruStateStore}.
+ *
+ * @author Adam Parr
+ */
+public class LruStateStoreTest {
+    /**
+     * A store sizing each state by its length.
+     */
+    private static class SizedStore extends LruStateStore<String> {
+        SizedStore(int maxCount, long maxSize) {
+            super(maxCount, maxSize);
+        }
+
+        @Override
+        protected long sizeOf(String state) {
+            return state.length();
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final LruStateStore<String> store = new LruStateStore<String>(2, -1);
+        store.put(0, "a");
+        store.put(1, "b");
+        store.get(0);
+        store.put(2, "c");
+        assertNull(store.peek(1));
+        assertArrayEquals(new int[] {0, 2}, store.positions());
+        assertEquals(1, store.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictsBySize() {
+        final SizedStore store = new SizedStore(-1, 5);
+        store.put(0, "aaa");
+        store.put(1, "bb");
+        assertEquals(5, store.getSize());
+        store.put(2, "c");
+        assertNull(store.peek(0));
+        assertEquals(3, store.getSize());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        final LruStateStore<String> store = new LruStateStore<String>();
+        store.put(0, "a");
+        assertEquals("a", store.get(0));
+        assertNull(store.get(1));
+        assertEquals(1, store.getHitCount());
+        assertEquals(1, store.getMissCount());
+    }
+
+    @Test
+    public void testMoveKeepsOrderAndSize() {
+        final SizedStore store = new SizedStore(-1, -1);
+        store.put(0, "a");
+        store.put(1, "bb");
+        store.put(2, "ccc");
+        store.move(new int[] {0, 1}, new int[] {3, -1});
+        assertArrayEquals(new int[] {3, 2}, store.positions());
+        assertEquals("a", store.peek(3));
+        assertEquals("ccc", store.peek(2));
+        assertEquals(4, store.getSize());
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    @Test
+    public void testMoveOntoUnlistedState() {
+        final SizedStore store = new SizedStore(-1, -1);
+        store.put(0, "a");
+        store.put(1, "bb");
+        store.move(new int[] {0}, new int[] {1});
+        assertArrayEquals(new int[] {1}, store.positions());
+        assertEquals("a", store.peek(1));
+        assertEquals(1, store.getSize());
+    }
+
+    @Test
+    public void testMoveSwap() {
+        final LruStateStore<String> store = new LruStateStore<String>();
+        store.put(0, "a");
+        store.put(1, "b");
+        store.move(new int[] {0, 1}, new int[] {1, 0});
+        assertEquals("b", store.peek(0));
+        assertEquals("a", store.peek(1));
+        assertEquals(2, store.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveMismatchedLengths() {
+        new LruStateStore<String>().move(new int[] {0}, new int[0]);
+    }
+}
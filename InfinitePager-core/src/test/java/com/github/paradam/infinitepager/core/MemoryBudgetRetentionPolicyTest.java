@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.github.paradam.infinitepager.core.RetentionPolicy.DETACH;
+import static com.github.paradam.infinitepager.core.RetentionPolicy.SAVE_STATE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link MemoryBudgetRetentionPolicy}.
+ *
+ * @author Adam Parr
+ */
+public class MemoryBudgetRetentionPolicyTest {
+    @Test
+    public void testDemotesToFitBudget() {
+        final MemoryBudgetRetentionPolicy policy = new MemoryBudgetRetentionPolicy(100);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        assertEquals(DETACH, policy.onPageRemoved(0, 40));
+        assertEquals(DETACH, policy.onPageRemoved(1, 40));
+        assertEquals(DETACH, policy.onPageRemoved(2, 40));
+        assertEquals(Arrays.asList("0:" + SAVE_STATE), callback.demotions);
+        assertEquals(80, policy.getDetachedSize());
+    }
+
+    @Test
+    public void testPageLargerThanBudget() {
+        final MemoryBudgetRetentionPolicy policy = new MemoryBudgetRetentionPolicy(100);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        policy.onPageRemoved(0, 40);
+        assertEquals(SAVE_STATE, policy.onPageRemoved(1, 200));
+        assertEquals(0, callback.demotions.size());
+        assertEquals(1, policy.getDetachedCount());
+    }
+
+    @Test
+    public void testSetBudget() {
+        final MemoryBudgetRetentionPolicy policy = new MemoryBudgetRetentionPolicy(100);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        policy.onPageRemoved(0, 30);
+        policy.onPageRemoved(1, 30);
+        policy.onPageRemoved(2, 30);
+        assertEquals(2, policy.setBudget(40));
+        assertEquals(Arrays.asList("0:" + SAVE_STATE, "1:" + SAVE_STATE), callback.demotions);
+        assertEquals(30, policy.getDetachedSize());
+    }
+
+    @Test
+    public void testCountLimitStillApplies() {
+        final MemoryBudgetRetentionPolicy policy = new MemoryBudgetRetentionPolicy(100);
+        policy.setMaxDetached(1);
+        policy.onPageRemoved(0, 10);
+        policy.onPageRemoved(1, 10);
+        assertEquals(1, policy.getDetachedCount());
+        assertEquals(1, policy.getSavedCount());
+    }
+}
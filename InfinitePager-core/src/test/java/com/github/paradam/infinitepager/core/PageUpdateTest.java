@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link PageUpdate}.
+ *
+ * @author Adam Parr
+ */
+public class PageUpdateTest {
+    @Test
+    public void testInserted() {
+        final PageUpdate update = PageUpdate.inserted(2, 3);
+        assertEquals(1, update.getNewPosition(1));
+        assertEquals(5, update.getNewPosition(2));
+        assertEquals(7, update.getNewPosition(4));
+        assertEquals(5, update.getTargetPosition(2));
+    }
+
+    @Test
+    public void testRemoved() {
+        final PageUpdate update = PageUpdate.removed(2, 3);
+        assertEquals(1, update.getNewPosition(1));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(2));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(4));
+        assertEquals(2, update.getNewPosition(5));
+        assertEquals(2, update.getTargetPosition(3));
+    }
+
+    @Test
+    public void testMovedForward() {
+        final PageUpdate update = PageUpdate.moved(1, 3);
+        assertArrayEquals(new int[] {0, 3, 1, 2, 4}, newPositions(update, 5));
+    }
+
+    @Test
+    public void testMovedBackward() {
+        final PageUpdate update = PageUpdate.moved(3, 1);
+        assertArrayEquals(new int[] {0, 2, 3, 1, 4}, newPositions(update, 5));
+    }
+
+    @Test
+    public void testChanged() {
+        final PageUpdate update = PageUpdate.changed(1, 2);
+        assertArrayEquals(new int[] {0, PageUpdate.NONE, PageUpdate.NONE, 3}, newPositions(update, 4));
+        assertEquals(1, update.getTargetPosition(1));
+        assertEquals(2, update.getTargetPosition(2));
+    }
+
+    @Test
+    public void testMapped() {
+        final PageUpdate update = PageUpdate.mapped(new int[] {1, PageUpdate.NONE, 0}, new int[] {1, 2, 0, 2});
+        assertArrayEquals(new int[] {1, PageUpdate.NONE, 0}, newPositions(update, 3));
+        assertEquals(PageUpdate.NONE, update.getNewPosition(3));
+        assertEquals(2, update.getTargetPosition(1));
+        assertEquals(2, update.getTargetPosition(3));
+        assertEquals(4, update.getTargetPosition(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMappedWithoutEndTarget() {
+        PageUpdate.mapped(new int[] {0, 1}, new int[] {0, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCount() {
+        PageUpdate.inserted(0, -1);
+    }
+
+    @Test
+    public void testThen() {
+        final PageUpdate update = PageUpdate.removed(0, 1).then(PageUpdate.inserted(1, 2));
+        assertArrayEquals(new int[] {PageUpdate.NONE, 0, 3, 4}, newPositions(update, 4));
+        assertEquals(0, update.getTargetPosition(0));
+        assertEquals(3, update.getTargetPosition(2));
+    }
+
+    @Test
+    public void testThenRemovedAfterMoved() {
+        final PageUpdate update = PageUpdate.moved(0, 2).then(PageUpdate.removed(2, 1));
+        assertArrayEquals(new int[] {PageUpdate.NONE, 0, 1, 2}, newPositions(update, 4));
+    }
+
+    @Test
+    public void testApplyToTable() {
+        final PageTable<String> table = new PageTable<String>();
+        table.set(0, "a");
+        table.set(1, "b");
+        table.set(2, "c");
+        table.set(3, "d");
+        PageUpdate.moved(0, 3).apply(table);
+        PageUpdate.removed(0, 1).apply(table);
+        assertEquals(3, table.size());
+        assertEquals("c", table.get(0));
+        assertEquals("d", table.get(1));
+        assertEquals("a", table.get(2));
+        assertNull(table.get(3));
+        assertEquals(2, table.indexOf("a"));
+    }
+
+    @Test
+    public void testApplyToStateStore() {
+        final LruStateStore<String> store = new LruStateStore<String>();
+        store.put(0, "a");
+        store.put(3, "d");
+        store.put(1, "b");
+        PageUpdate.removed(1, 1).apply(store);
+        assertArrayEquals(new int[] {0, 2}, store.positions());
+        assertEquals("a", store.peek(0));
+        assertEquals("d", store.peek(2));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testApplyToMap() {
+        final LinkedHashMap<Integer, String> map = new LinkedHashMap<Integer, String>();
+        map.put(4, "e");
+        map.put(0, "a");
+        map.put(2, "c");
+        PageUpdate.removed(1, 2).apply(map);
+        assertEquals(Arrays.asList(2, 0), new ArrayList<Integer>(map.keySet()));
+        assertEquals("e", map.get(2));
+        assertEquals("a", map.get(0));
+    }
+
+    @Test
+    public void testApplyToSet() {
+        final LinkedHashSet<Integer> set = new LinkedHashSet<Integer>(Arrays.asList(3, 0, 1));
+        PageUpdate.moved(3, 0).apply(set);
+        assertEquals(Arrays.asList(0, 1, 2), new ArrayList<Integer>(set));
+    }
+
+    /**
+     * @param update The change.
+     * @param count  The number of pages before the change.
+     * @return The new position of each page.
+     */
+    private static int[] newPositions(PageUpdate update, int count) {
+        final int[] positions = new int[count];
+        for (int x = 0; x < count; x++) {
+            positions[x] = update.getNewPosition(x);
+        }
+        return positions;
+    }
+}
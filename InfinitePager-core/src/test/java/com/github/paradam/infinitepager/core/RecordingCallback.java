@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RetentionPolicy.Callback} that records each demotion as <tt>position:retention</tt>.
+ *
+ * @author Adam Parr
+ */
+class RecordingCallback implements RetentionPolicy.Callback {
+    /**
+     * The demotions in the order they were made.
+     */
+    final List<String> demotions = new ArrayList<String>();
+
+    @Override
+    public void onRetentionChanged(int position, int retention) {
+        demotions.add(position + ":" + retention);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.github.paradam.infinitepager.core.RetentionPolicy.DETACH;
+import static com.github.paradam.infinitepager.core.RetentionPolicy.DISCARD;
+import static com.github.paradam.infinitepager.core.RetentionPolicy.SAVE_STATE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link WindowRetentionPolicy}.
+ *
+ * @author Adam Parr
+ */
+public class WindowRetentionPolicyTest {
+    @Test
+    public void testRetentionByDistance() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        policy.onPrimaryChanged(5, 0);
+        assertEquals(DETACH, policy.onPageRemoved(4, 0));
+        assertEquals(DETACH, policy.onPageRemoved(6, 0));
+        assertEquals(SAVE_STATE, policy.onPageRemoved(3, 0));
+        assertEquals(DISCARD, policy.onPageRemoved(8, 0));
+    }
+
+    @Test
+    public void testDistanceWrapsAround() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        policy.onPrimaryChanged(0, 10);
+        assertEquals(DETACH, policy.onPageRemoved(9, 0));
+        assertEquals(SAVE_STATE, policy.onPageRemoved(8, 0));
+        assertEquals(DISCARD, policy.onPageRemoved(5, 0));
+    }
+
+    @Test
+    public void testDetachBeforePrimaryKnown() {
+        assertEquals(DETACH, new WindowRetentionPolicy(0, 0).onPageRemoved(100, 0));
+    }
+
+    @Test
+    public void testDemotesAsPrimaryMoves() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        policy.onPrimaryChanged(1, 0);
+        policy.onPageRemoved(0, 0);
+        policy.onPageRemoved(2, 0);
+        policy.onPrimaryChanged(2, 0);
+        assertEquals(Arrays.asList("0:" + SAVE_STATE), callback.demotions);
+        policy.onPrimaryChanged(3, 0);
+        assertEquals(Arrays.asList("0:" + SAVE_STATE, "0:" + DISCARD), callback.demotions);
+        // Once discarded the page is no longer retained.
+        policy.onPrimaryChanged(10, 0);
+        assertEquals(Arrays.asList("0:" + SAVE_STATE, "0:" + DISCARD, "2:" + DISCARD), callback.demotions);
+    }
+
+    @Test
+    public void testAddedPageNotDemoted() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        policy.onPrimaryChanged(1, 0);
+        policy.onPageRemoved(0, 0);
+        policy.onPageAdded(0);
+        policy.onPrimaryChanged(10, 0);
+        assertEquals(Collections.<String>emptyList(), callback.demotions);
+    }
+
+    @Test
+    public void testPositionsChanged() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        final RecordingCallback callback = new RecordingCallback();
+        policy.setCallback(callback);
+        policy.onPrimaryChanged(1, 0);
+        policy.onPageRemoved(2, 0);
+        policy.onPositionsChanged(PageUpdate.inserted(0, 3));
+        // The page follows its new position, 5, and is demoted relative to it.
+        policy.onPrimaryChanged(7, 0);
+        assertEquals(Arrays.asList("5:" + SAVE_STATE), callback.demotions);
+    }
+
+    @Test
+    public void testPrimaryRemoved() {
+        final WindowRetentionPolicy policy = new WindowRetentionPolicy(1, 2);
+        policy.onPrimaryChanged(5, 10);
+        policy.onPositionsChanged(PageUpdate.removed(5, 1));
+        // The page shown in place of the removed primary page becomes the primary page.
+        assertEquals(SAVE_STATE, policy.onPageRemoved(7, 0));
+        assertEquals(DISCARD, policy.onPageRemoved(0, 0));
+    }
+}
@@ -169,17 +169,9 @@ public class InfiniteFragmentStatePagerActivity extends FragmentActivity {
 		}
 		
 		@Override
-		public int getRelativeItemPosition(Object object) {
-			int x = 0;
-			int length = getRelativeCount();
-			for (Fragment f : fragments) {
-				if (x >= length) break;
-				if (f == object) {
-					return x;
-				}
-				x++;
-			}
-			return POSITION_NONE;
+		public boolean hasStableIds() {
+			// Each Fragment keeps its index in the array, so its position is a stable item id.
+			return true;
 		}
 
 		@Override
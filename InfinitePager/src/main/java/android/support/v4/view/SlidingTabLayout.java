@@ -151,6 +151,17 @@ public class SlidingTabLayout extends HorizontalScrollView implements SlidablePa
 
     }
 
+    /**
+     * Scrolls to the tab of the current item once the tabs have been laid out again. Only one is
+     * posted at a time however many times the data changes before it runs.
+     */
+    private final Runnable scrollToCurrentTab = new Runnable() {
+        @Override
+        public void run() {
+            scrollToTab(mViewPager instanceof InfiniteViewPager ? ((InfiniteViewPager) mViewPager).getRelativeCurrentItem() : mViewPager.getCurrentItem(), 0);
+        }
+    };
+
     /**
      * An observer that is informed when the data for the adapter changes.
      */
@@ -158,23 +169,15 @@ public class SlidingTabLayout extends HorizontalScrollView implements SlidablePa
         @Override
         public void onChanged() {
             populateTabStrip();
-            SlidingTabLayout.this.post(new Runnable() {
-                @Override
-                public void run() {
-                    scrollToTab(mViewPager instanceof InfiniteViewPager ? ((InfiniteViewPager) mViewPager).getRelativeCurrentItem() : mViewPager.getCurrentItem(), 0);
-                }
-            });
+            removeCallbacks(scrollToCurrentTab);
+            post(scrollToCurrentTab);
         }
 
         @Override
         public void onInvalidated() {
             populateTabStrip();
-            SlidingTabLayout.this.post(new Runnable() {
-                @Override
-                public void run() {
-                    scrollToTab(mViewPager instanceof InfiniteViewPager ? ((InfiniteViewPager) mViewPager).getRelativeCurrentItem() : mViewPager.getCurrentItem(), 0);
-                }
-            });
+            removeCallbacks(scrollToCurrentTab);
+            post(scrollToCurrentTab);
         }
     };
 
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A {@link ParcelableStateStore} that writes the states evicted from memory to a file instead of
+ * discarding them, reading them back the next time the page is instantiated. Memory use stays
+ * within the limits of the store while pages the user returns to keep their saved state.</p>
+ *
+ * <p>Each evicted state is marshalled to the bytes of a Parcel and appended to the file, which is
+ * compacted once most of it is taken by states that have since been read back or replaced. States
+ * that cannot be marshalled, such as those holding file descriptors, are discarded.</p>
+ *
+ * <p>The bytes of a Parcel are only valid within the same process, so the file is emptied when the
+ * store is created and states kept only on disk are not included in the saved state of the
+ * adapter. Call {@link #close()} once the store is no longer needed to delete the file.</p>
+ *
+ * @param <T> The type of the saved state.
+ * @author Adam Parr
+ */
+public class DiskStateStore<T extends Parcelable> extends ParcelableStateStore<T> {
+    /**
+     * Tag to show when logging.
+     */
+    private static final String TAG = "DiskStateStore";
+
+    /**
+     * The number of unused bytes in the file before it is compacted.
+     */
+    private static final long COMPACT_THRESHOLD = 256 * 1024;
+
+    /**
+     * The file the evicted states are written to.
+     */
+    private final File mFile;
+
+    /**
+     * The ClassLoader used to read the states back.
+     */
+    private final ClassLoader mLoader;
+
+    /**
+     * The states kept in the file in the order they were written, mapped to their offset and length.
+     */
+    private final LinkedHashMap<Integer, long[]> mIndex = new LinkedHashMap<Integer, long[]>();
+
+    /**
+     * The open file, <code>null</code> until the first state is written.
+     */
+    private RandomAccessFile mData = null;
+
+    /**
+     * The number of bytes in the file used by the states in {@link #mIndex}.
+     */
+    private long mLiveBytes = 0;
+
+    /**
+     * The number of states written to the file.
+     */
+    private int mWriteCount = 0;
+
+    /**
+     * The number of states read back from the file.
+     */
+    private int mReadCount = 0;
+
+    /**
+     * Constructor that accepts the file to write to, keeping up to
+     * {@value ParcelableStateStore#DEFAULT_MAX_SIZE} bytes of states in memory.
+     *
+     * @param file   The file the evicted states are written to, such as one in the cache directory.
+     * @param loader The ClassLoader used to read the states back.
+     */
+    public DiskStateStore(File file, ClassLoader loader) {
+        this(file, loader, -1, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor that accepts the file to write to and the limits of the states kept in memory.
+     *
+     * @param file     The file the evicted states are written to, such as one in the cache directory.
+     * @param loader   The ClassLoader used to read the states back.
+     * @param maxCount The maximum number of states kept in memory, <tt>-1</tt> for no limit.
+     * @param maxSize  The maximum total size of the states kept in memory in bytes, <tt>-1</tt> for
+     *                 no limit.
+     */
+    public DiskStateStore(File file, ClassLoader loader, int maxCount, long maxSize) {
+        super(maxCount, maxSize);
+        mFile = file;
+        mLoader = loader;
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "Unable to delete " + mFile);
+        }
+    }
+
+    /**
+     * Get the saved state of a page, reading it back into memory from the file if it was evicted.
+     * A state read back from the file counts as a hit, only a state found in neither counts as a
+     * miss.
+     */
+    @Override
+    public T get(int position) {
+        final long[] entry = mIndex.remove(position);
+        if (entry != null) {
+            final T state = read(entry);
+            if (state != null) {
+                mReadCount++;
+                super.put(position, state);
+                // The state may be too large to be kept in memory, in which case it was written
+                // back to the file and is returned without counting as a hit or a miss.
+                return super.peek(position) != null ? super.get(position) : state;
+            }
+        }
+        return super.get(position);
+    }
+
+    /**
+     * Only states kept in memory are returned.
+     */
+    @Override
+    public T peek(int position) {
+        return super.peek(position);
+    }
+
+    @Override
+    public void put(int position, T state) {
+        drop(mIndex.remove(position));
+        super.put(position, state);
+    }
+
+    @Override
+    public T remove(int position) {
+        T state = super.remove(position);
+        final long[] entry = mIndex.remove(position);
+        if (state == null && entry != null) {
+            state = read(entry);
+        } else {
+            drop(entry);
+        }
+        return state;
+    }
+
+    /**
+     * The states kept in the file are moved by updating their position in the index, without
+     * being read back. A state kept in memory takes the place of a state kept in the file at the
+     * same position.
+     */
+    @Override
+    public void move(int[] positions, int[] newPositions) {
+        super.move(positions, newPositions);
+        if (mIndex.isEmpty()) {
+            return;
+        }
+        final HashMap<Integer, Integer> moves = new HashMap<Integer, Integer>(positions.length * 2);
+        final HashSet<Integer> targets = new HashSet<Integer>(positions.length * 2);
+        for (int x = 0; x < positions.length; x++) {
+            moves.put(positions[x], newPositions[x]);
+            targets.add(newPositions[x]);
+        }
+        // Keep the order the states were written in, which compacting the file relies on.
+        final ArrayList<Map.Entry<Integer, long[]>> entries = new ArrayList<Map.Entry<Integer, long[]>>(mIndex.entrySet());
+        mIndex.clear();
+        for (Map.Entry<Integer, long[]> entry : entries) {
+            final Integer moved = moves.get(entry.getKey());
+            final int position = moved == null ? entry.getKey() : moved;
+            if ((moved == null ? targets.contains(position) : position < 0) || super.peek(position) != null) {
+                drop(entry.getValue());
+                continue;
+            }
+            // Removed first so the entries stay in the order of their offsets.
+            drop(mIndex.remove(position));
+            mIndex.put(position, entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        mIndex.clear();
+        mLiveBytes = 0;
+        if (mData != null) {
+            try {
+                mData.setLength(0);
+            } catch (IOException e) {
+                Log.w(TAG, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return super.size() + mIndex.size();
+    }
+
+    /**
+     * The positions of the states kept in the file come before those kept in memory.
+     */
+    @Override
+    public int[] positions() {
+        final int[] memory = super.positions();
+        final int[] positions = new int[mIndex.size() + memory.length];
+        int x = 0;
+        for (Integer position : mIndex.keySet()) {
+            positions[x++] = position;
+        }
+        System.arraycopy(memory, 0, positions, x, memory.length);
+        return positions;
+    }
+
+    @Override
+    protected void onEvicted(int position, T state) {
+        byte[] bytes;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            bytes = parcel.marshall();
+        } catch (RuntimeException e) {
+            // The state holds objects that can not be written as bytes.
+            Log.w(TAG, "Unable to write state at " + position, e);
+            return;
+        } finally {
+            parcel.recycle();
+        }
+        try {
+            if (mData == null) {
+                mData = new RandomAccessFile(mFile, "rw");
+            }
+            final long offset = mData.length();
+            mData.seek(offset);
+            mData.write(bytes);
+            mIndex.put(position, new long[]{offset, bytes.length});
+            mLiveBytes += bytes.length;
+            mWriteCount++;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write state at " + position, e);
+        }
+    }
+
+    /**
+     * Read a state back from the file.
+     *
+     * @param entry The offset and length of the state.
+     * @return The state, <code>null</code> if it could not be read.
+     */
+    private T read(long[] entry) {
+        drop(entry);
+        byte[] bytes = new byte[(int) entry[1]];
+        try {
+            mData.seek(entry[0]);
+            mData.readFully(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, e.getMessage(), e);
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(mLoader);
+        } catch (RuntimeException e) {
+            Log.w(TAG, e.getMessage(), e);
+            return null;
+        } finally {
+            parcel.recycle();
+            compact();
+        }
+    }
+
+    /**
+     * Mark the bytes of a state in the file as no longer used.
+     *
+     * @param entry The offset and length of the state, may be <code>null</code>.
+     */
+    private void drop(long[] entry) {
+        if (entry != null) {
+            mLiveBytes -= entry[1];
+        }
+    }
+
+    /**
+     * Rewrite the file with only the states still used, once enough of it is unused.
+     */
+    private void compact() {
+        try {
+            final long unused = mData.length() - mLiveBytes;
+            if (unused < COMPACT_THRESHOLD || unused < mLiveBytes) {
+                return;
+            }
+            long offset = 0;
+            for (Map.Entry<Integer, long[]> entry : mIndex.entrySet()) {
+                // The states are in the order they were written, so never overwrite a state not yet moved.
+                final long[] value = entry.getValue();
+                byte[] bytes = new byte[(int) value[1]];
+                mData.seek(value[0]);
+                mData.readFully(bytes);
+                mData.seek(offset);
+                mData.write(bytes);
+                value[0] = offset;
+                offset += bytes.length;
+            }
+            mData.setLength(offset);
+        } catch (IOException e) {
+            Log.w(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close and delete the file, discarding every state kept in it.
+     */
+    public void close() {
+        mIndex.clear();
+        mLiveBytes = 0;
+        if (mData != null) {
+            try {
+                mData.close();
+            } catch (IOException e) {
+                Log.w(TAG, e.getMessage(), e);
+            }
+            mData = null;
+        }
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "Unable to delete " + mFile);
+        }
+    }
+
+    /**
+     * @return The number of states kept in the file.
+     */
+    public int getDiskCount() {
+        return mIndex.size();
+    }
+
+    /**
+     * @return The number of bytes in the file used by the states kept in it.
+     */
+    public long getDiskSize() {
+        return mLiveBytes;
+    }
+
+    /**
+     * @return The number of states written to the file.
+     */
+    public int getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * @return The number of states read back from the file.
+     */
+    public int getReadCount() {
+        return mReadCount;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.Choreographer;
+
+import com.github.paradam.infinitepager.core.FragmentOps;
+
+/**
+ * <p>Decides when the operations a fragment adapter makes on its fragments during an update are
+ * committed to the FragmentManager and executed.</p>
+ *
+ * <p>By default, {@link #COMMIT_IMMEDIATE}, every operation is executed before the update finishes,
+ * creating the views of every new page within the frame that finishes the update. With
+ * {@link #COMMIT_NEXT_FRAME} or {@link #COMMIT_IDLE} only the operations on the current page are
+ * executed at once, the operations on the other pages are executed one page per frame starting with
+ * the next frame, or all at once when the main thread is idle. Operations still waiting are executed at once if a page they
+ * affect is needed sooner, such as when it becomes the current page. Operations still waiting
+ * that a later update undoes cancel out, so the fragment is not touched at all.</p>
+ *
+ * <p>The time spent executing each phase is recorded, see {@link #getPrimaryCommitTime()} and
+ * {@link #getDeferredCommitTime()}, and can be followed through an {@link OnCommitListener}.</p>
+ *
+ * <p>Must only be used from the main thread.</p>
+ *
+ * @param <F> The type of the fragments.
+ * @author Adam Parr
+ */
+public class FragmentCommitScheduler<F> {
+    /**
+     * Execute every operation before the update finishes.
+     */
+    public static final int COMMIT_IMMEDIATE  = 0;
+    /**
+     * Execute the operations on the current page before the update finishes, and the rest one page
+     * per frame, starting with the next frame. Before Jelly Bean, which has no Choreographer, one
+     * page is executed per message posted to the main thread instead.
+     */
+    public static final int COMMIT_NEXT_FRAME = 1;
+    /**
+     * Execute the operations on the current page before the update finishes, and the rest once
+     * the main thread is idle.
+     */
+    public static final int COMMIT_IDLE       = 2;
+
+    /**
+     * The phase executing the operations on the current page, or every operation when committing
+     * immediately.
+     */
+    public static final int PHASE_PRIMARY  = 0;
+    /**
+     * The phase executing the operations on the other pages.
+     */
+    public static final int PHASE_DEFERRED = 1;
+
+    /**
+     * Commits operations to the FragmentManager and executes them.
+     *
+     * @param <F> The type of the fragments.
+     */
+    public interface Committer<F> {
+        /**
+         * Commit the operations in a single transaction and execute it.
+         *
+         * @param ops The operations, in the order they should be made.
+         */
+        void commit(FragmentOps<F> ops);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked after operations have been executed.
+     */
+    public interface OnCommitListener {
+        /**
+         * Called after operations have been executed.
+         *
+         * @param phase      {@link #PHASE_PRIMARY} or {@link #PHASE_DEFERRED}.
+         * @param operations The number of operations executed.
+         * @param timeNanos  The time taken in nanoseconds.
+         */
+        void onCommitted(int phase, int operations, long timeNanos);
+    }
+
+    /**
+     * Commits the operations to the FragmentManager.
+     */
+    private final Committer<F> mCommitter;
+
+    /**
+     * The operations on pages other than the current page waiting to be executed.
+     */
+    private final FragmentOps<F> mDeferred = new FragmentOps<F>();
+
+    /**
+     * Posts the execution of the operations waiting.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * When operations are executed.
+     */
+    private int mMode = COMMIT_IMMEDIATE;
+
+    /**
+     * <tt>true</tt> while the execution of the operations waiting has been scheduled.
+     */
+    private boolean mScheduled = false;
+
+    /**
+     * Told after operations have been executed, <code>null</code> if not set.
+     */
+    private OnCommitListener mListener = null;
+
+    /**
+     * The total time spent executing operations in each phase in nanoseconds.
+     */
+    private final long[] mCommitTime = new long[2];
+
+    /**
+     * The number of transactions executed in each phase.
+     */
+    private final int[] mCommitCount = new int[2];
+
+    /**
+     * Executes the operations waiting on the next page before Jelly Bean.
+     */
+    private final Runnable mCommitNext = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            commitNext();
+        }
+    };
+
+    /**
+     * Executes the operations waiting on the next page at the start of each frame, created when
+     * first needed from Jelly Bean.
+     */
+    private FrameCommit mFrameCommit = null;
+
+    /**
+     * Executes the operations waiting once the main thread is idle.
+     */
+    private final MessageQueue.IdleHandler mCommitWhenIdle = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mScheduled = false;
+            commitDeferred();
+            return false;
+        }
+    };
+
+    /**
+     * Constructor that accepts how to commit the operations to the FragmentManager.
+     *
+     * @param committer Commits the operations to the FragmentManager.
+     */
+    public FragmentCommitScheduler(Committer<F> committer) {
+        mCommitter = committer;
+    }
+
+    /**
+     * Set when the operations on pages other than the current page are executed. Operations still
+     * waiting are executed at once when changing to {@link #COMMIT_IMMEDIATE}.
+     *
+     * @param mode {@link #COMMIT_IMMEDIATE}, {@link #COMMIT_NEXT_FRAME} or {@link #COMMIT_IDLE}.
+     */
+    public void setMode(int mode) {
+        if (mode != mMode) {
+            flush();
+            mMode = mode;
+        }
+    }
+
+    /**
+     * @return When the operations on pages other than the current page are executed.
+     */
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * @param listener Told after operations have been executed, <code>null</code> to remove.
+     */
+    public void setOnCommitListener(OnCommitListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Commit the operations of an update, executing the operations on the current page at once.
+     *
+     * @param ops     The operations of the update, left empty.
+     * @param primary The fragment of the current page, <code>null</code> if there is none.
+     */
+    public void commit(FragmentOps<F> ops, Object primary) {
+        mDeferred.addAll(ops);
+        final FragmentOps<F> now;
+        if (mMode == COMMIT_IMMEDIATE) {
+            now = new FragmentOps<F>();
+            now.addAll(mDeferred);
+        } else {
+            now = mDeferred.split(primary);
+        }
+        if (!now.isEmpty()) {
+            execute(PHASE_PRIMARY, now);
+        }
+        schedule();
+    }
+
+    /**
+     * @param fragment The fragment.
+     * @return <tt>true</tt> if operations on the fragment are waiting to be executed.
+     */
+    public boolean isPending(Object fragment) {
+        return mDeferred.contains(fragment);
+    }
+
+    /**
+     * Execute the operations waiting if any affect a fragment, such as before checking the state
+     * of the fragment in the FragmentManager.
+     *
+     * @param fragment The fragment.
+     */
+    public void flush(Object fragment) {
+        if (fragment != null && isPending(fragment)) {
+            flush();
+        }
+    }
+
+    /**
+     * Execute every operation waiting at once.
+     */
+    public void flush() {
+        if (mScheduled) {
+            mScheduled = false;
+            mHandler.removeCallbacks(mCommitNext);
+            if (mFrameCommit != null) {
+                mFrameCommit.cancel();
+            }
+            Looper.myQueue().removeIdleHandler(mCommitWhenIdle);
+        }
+        commitDeferred();
+    }
+
+    /**
+     * @return The total time spent executing the operations on the current page, or every
+     * operation when committing immediately, in nanoseconds.
+     */
+    public long getPrimaryCommitTime() {
+        return mCommitTime[PHASE_PRIMARY];
+    }
+
+    /**
+     * @return The total time spent executing the operations on the other pages in nanoseconds.
+     */
+    public long getDeferredCommitTime() {
+        return mCommitTime[PHASE_DEFERRED];
+    }
+
+    /**
+     * @return The number of transactions executed for the current page.
+     */
+    public int getPrimaryCommitCount() {
+        return mCommitCount[PHASE_PRIMARY];
+    }
+
+    /**
+     * @return The number of transactions executed for the other pages.
+     */
+    public int getDeferredCommitCount() {
+        return mCommitCount[PHASE_DEFERRED];
+    }
+
+    /**
+     * Schedule the execution of the operations waiting, if any and not already scheduled.
+     */
+    private void schedule() {
+        if (mDeferred.isEmpty() || mScheduled) {
+            return;
+        }
+        mScheduled = true;
+        if (mMode == COMMIT_IDLE) {
+            Looper.myQueue().addIdleHandler(mCommitWhenIdle);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameCommit == null) {
+                mFrameCommit = new FrameCommit(this);
+            }
+            mFrameCommit.post();
+        } else {
+            mHandler.post(mCommitNext);
+        }
+    }
+
+    /**
+     * Execute the operations waiting on the page that has waited longest, then schedule the rest.
+     */
+    private void commitNext() {
+        if (!mDeferred.isEmpty()) {
+            execute(PHASE_DEFERRED, mDeferred.split(mDeferred.fragmentAt(0)));
+        }
+        schedule();
+    }
+
+    /**
+     * Execute the operations waiting, if any.
+     */
+    private void commitDeferred() {
+        if (!mDeferred.isEmpty()) {
+            final FragmentOps<F> ops = new FragmentOps<F>();
+            ops.addAll(mDeferred);
+            execute(PHASE_DEFERRED, ops);
+        }
+    }
+
+    /**
+     * Commit and execute operations, recording the time taken.
+     *
+     * @param phase The phase being executed.
+     * @param ops   The operations.
+     */
+    private void execute(int phase, FragmentOps<F> ops) {
+        final int operations = ops.size();
+        final long start = System.nanoTime();
+        mCommitter.commit(ops);
+        final long time = System.nanoTime() - start;
+        mCommitTime[phase] += time;
+        mCommitCount[phase]++;
+        if (mListener != null) {
+            mListener.onCommitted(phase, operations, time);
+        }
+    }
+
+    /**
+     * Executes the operations waiting on the next page at the start of each frame.
+     */
+    @TargetApi (Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameCommit implements Choreographer.FrameCallback {
+        /**
+         * The scheduler to execute the operations of.
+         */
+        private final FragmentCommitScheduler<?> mScheduler;
+
+        /**
+         * Constructor that accepts the scheduler to execute the operations of.
+         *
+         * @param scheduler The scheduler.
+         */
+        private FrameCommit(FragmentCommitScheduler<?> scheduler) {
+            mScheduler = scheduler;
+        }
+
+        /**
+         * Execute the operations on the next page at the start of the next frame. Main thread only.
+         */
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * Stop the operations on the next page being executed at the start of the next frame.
+         */
+        void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduler.mScheduled = false;
+            mScheduler.commitNext();
+        }
+    }
+}
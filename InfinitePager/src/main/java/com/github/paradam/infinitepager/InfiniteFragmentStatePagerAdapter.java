@@ -19,16 +19,26 @@ package com.github.paradam.infinitepager;
 import android.annotation.TargetApi;
 import android.app.Fragment;
 import android.app.FragmentManager;
-import android.app.FragmentTransaction;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.v13.app.FragmentCompat;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.ArrayList;
+import com.github.paradam.infinitepager.core.FixedRetentionPolicy;
+import com.github.paradam.infinitepager.core.FragmentOps;
+import com.github.paradam.infinitepager.core.FragmentPool;
+import com.github.paradam.infinitepager.core.PageTable;
+import com.github.paradam.infinitepager.core.PageUpdate;
+import com.github.paradam.infinitepager.core.RetentionPolicy;
+import com.github.paradam.infinitepager.core.StateStore;
+
+import java.util.HashMap;
+
 
 /**
  * <p>A FragmentPagerAdapter that will behave as if it has an infinite number of pages, or if the
@@ -51,11 +61,22 @@ import java.util.ArrayList;
  * associated with each visited page as compared to {@link com.github.paradam.infinitepager.InfiniteFragmentPagerAdapter}
  * at the cost of potentially more overhead when switching between pages.<p/>
  *
+ * <p>By default only the saved state of each page is kept once the ViewPager no longer needs it. Set
+ * a {@link com.github.paradam.infinitepager.core.RetentionPolicy} such as
+ * {@link com.github.paradam.infinitepager.core.LruRetentionPolicy} to keep some fragments detached
+ * so they can be shown again without being created from their saved state.</p>
+ *
+ * <p>Call {@link #setFragmentPoolSize(int)} to give the fragments removed from their pages to new
+ * pages of the same class and type, re-armed through {@link #rebindRelativeItem(int, Fragment)},
+ * rather than allocating a new fragment for every page.</p>
+ *
  * <p>When using InfiniteFragmentStatePagerAdapter the host ViewPager must have a valid ID set.</p>
  *
  * <p>Subclasses only need to implement {@link #getRelativeItem(int)} and {@link #getRelativeCount()}
  * to have a working adapter. Override {@link com.github.paradam.infinitepager.InfinitePagerAdapter#getRelativePosition(int)}
- * if the fragments have the possibility of changing positions within the ViewPager.</p>
+ * if the fragments have the possibility of changing positions within the ViewPager, or override
+ * {@link #hasStableIds()} and {@link #getRelativeItemId(int)} to have the pages follow their item
+ * ids when the data set changes.</p>
  *
  * @author Adam Parr
  */
@@ -67,23 +88,45 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
     private static final String TAG = "InfiniteFragmentStatePagerAdapter";
 
     /**
-     * The current Fragment Transaction that is occurring, <code>null</code> if no there is
-     * currently no transaction.
+     * The version of the format written by {@link #saveState()}, states without a version are
+     * written with a saved state for every position and a key for each fragment.
+     */
+    private static final int STATE_VERSION = 2;
+
+    /**
+     * The operations on the fragments made by the current update, <code>null</code> if there is
+     * currently no update.
      */
-    private FragmentTransaction mCurTransaction  = null;
+    private FragmentOps<Fragment> mCurTransaction  = null;
     /**
      * Reference to the FragmentManager.
      */
     private FragmentManager     mFragmentManager = null;
 
     /**
-     * Array list where the fragments saved states are stored.
+     * Commits the operations on the fragments to the FragmentManager.
+     */
+    private final FragmentCommitScheduler<Fragment> mCommitScheduler;
+
+    /**
+     * Store where the fragments saved states are kept.
      */
-    private ArrayList<Fragment.SavedState> mSavedState = new ArrayList<Fragment.SavedState>();
+    private StateStore<Fragment.SavedState> mSavedState = new ParcelableStateStore<Fragment.SavedState>();
     /**
-     * Array list where the fragments are stored.
+     * Sparse table where the fragments are stored, indexing the position of each fragment.
      */
-    private ArrayList<Fragment>            mFragments  = new ArrayList<Fragment>();
+    private PageTable<Fragment>             mFragments  = new PageTable<Fragment>();
+
+    /**
+     * The fragments removed from their page, to be given to new pages rather than allocating new
+     * fragments, see {@link #setFragmentPoolSize(int)}.
+     */
+    private final FragmentPool<Fragment> mFragmentPool = new FragmentPool<Fragment>(0);
+
+    /**
+     * The number of pages given a fragment from {@link #mFragmentPool}.
+     */
+    private int mRecycledCount = 0;
 
     /**
      * The currently set visible Item.
@@ -91,12 +134,132 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
     private Fragment mCurrentPrimaryItem = null;
 
     /**
-     * Constructor that accepts a FragmentManager.
+     * The fragments kept detached by the RetentionPolicy, keyed by their relative position.
+     */
+    private SparseArray<Fragment> mDetachedFragments = new SparseArray<Fragment>();
+
+    /**
+     * The item ids of the pages instantiated while the adapter has stable ids, keyed by their
+     * relative position, so the pages can be followed to their new position when the data set changes.
+     */
+    private SparseArray<Long> mItemIds = new SparseArray<Long>();
+
+    /**
+     * The maximum distance from the primary item of the saved states written by {@link #saveState()},
+     * <tt>-1</tt> to write every saved state kept.
+     */
+    private int mSavedStateWindow = -1;
+
+    /**
+     * The state given to {@link #restoreState(android.os.Parcelable, ClassLoader)} while any of its
+     * positions have not yet been read, <code>null</code> otherwise.
+     */
+    private Bundle mPendingState = null;
+
+    /**
+     * The positions of the saved states not yet read from {@link #mPendingState}, mapped to their index.
+     */
+    private SparseIntArray mPendingStates = null;
+
+    /**
+     * The positions of the fragments not yet read from {@link #mPendingState}, mapped to their index.
+     */
+    private SparseIntArray mPendingFragments = null;
+
+    /**
+     * The positions of the detached fragments not yet read from {@link #mPendingState}, mapped to
+     * their index.
+     */
+    private SparseIntArray mPendingDetached = null;
+
+    /**
+     * Constructor that accepts a FragmentManager, only the saved state of each page the user
+     * visits is kept unless another RetentionPolicy is set.
      *
      * @param fm The FragmentManager.
      */
     public InfiniteFragmentStatePagerAdapter(FragmentManager fm) {
         mFragmentManager = fm;
+        mCommitScheduler = new FragmentCommitScheduler<Fragment>(new FragmentTransactionCommitter(fm, TAG));
+        setRetentionPolicy(new FixedRetentionPolicy(RetentionPolicy.SAVE_STATE));
+    }
+
+    /**
+     * <p>Set the store the saved states of the fragments are kept in.<p/>
+     *
+     * <p>By default a {@link com.github.paradam.infinitepager.ParcelableStateStore} keeping up to
+     * {@value com.github.paradam.infinitepager.ParcelableStateStore#DEFAULT_MAX_SIZE} bytes of saved
+     * states is used. Any states already kept are moved to the new store.</p>
+     *
+     * <p>Use a {@link com.github.paradam.infinitepager.DiskStateStore} to write the states evicted
+     * from memory to a file rather than discarding them.</p>
+     *
+     * @param store The StateStore to use.
+     */
+    public void setSavedStateStore(StateStore<Fragment.SavedState> store) {
+        for (int position : mSavedState.positions()) {
+            store.put(position, mSavedState.remove(position));
+        }
+        mSavedState = store;
+    }
+
+    /**
+     * @return The store the saved states of the fragments are kept in.
+     * @see #setSavedStateStore(com.github.paradam.infinitepager.core.StateStore)
+     */
+    public StateStore<Fragment.SavedState> getSavedStateStore() {
+        return mSavedState;
+    }
+
+    /**
+     * Set the maximum distance from the current page, wrapping around the ends of the list, of the
+     * saved states written to the saved state of the adapter. Saved states further away are lost
+     * if the Activity is recreated, keeping the saved state of the Activity small.
+     *
+     * @param window The maximum distance, or <tt>-1</tt> (the default) to write every saved state
+     *               kept.
+     */
+    public void setSavedStateWindow(int window) {
+        mSavedStateWindow = window;
+    }
+
+    /**
+     * @return The maximum distance from the current page of the saved states written to the saved
+     * state of the adapter, <tt>-1</tt> if every saved state is written.
+     * @see #setSavedStateWindow(int)
+     */
+    public int getSavedStateWindow() {
+        return mSavedStateWindow;
+    }
+
+    /**
+     * <p>Indicates whether the item ids returned by {@link #getRelativeItemId(int)} stay with their
+     * items when the data set changes.</p>
+     *
+     * <p>When <tt>true</tt>, {@link #notifyDataSetChanged()} moves the fragments and saved states of
+     * each page to the new position of its item id, including the pages destroyed since the data set
+     * last changed, without calling {@link #getRelativeItemPosition(Object)}. The pages whose item id
+     * is no longer in the data set are removed.</p>
+     *
+     * <p>The default implementation returns <tt>false</tt>.</p>
+     *
+     * @return <tt>true</tt> if the item ids are stable.
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    /**
+     * <p>Return a unique identifier for the item at the given position.<p/>
+     *
+     * <p>The default implementation returns the given position. Subclasses should override this
+     * method along with {@link #hasStableIds()} if the positions of items can change.</p>
+     *
+     * @param position Position within this adapter
+     * @return Unique identifier for the item at position
+     */
+    public long getRelativeItemId(int position) {
+        return position;
     }
 
     /**
@@ -107,6 +270,53 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
      */
     public abstract Fragment getRelativeItem(int position);
 
+    /**
+     * <p>Get the class of the Fragment at the position provided, to look for a fragment of the same
+     * class in the pool before calling {@link #getRelativeItem(int)}.</p>
+     *
+     * <p>The default implementation returns <code>null</code>, so no fragment is taken from the
+     * pool.</p>
+     *
+     * @param position The relative position of the page.
+     * @return The class of the fragment, <code>null</code> to always call {@link #getRelativeItem(int)}.
+     * @see #setFragmentPoolSize(int)
+     */
+    protected Class<? extends Fragment> getRelativeItemClass(int position) {
+        return null;
+    }
+
+    /**
+     * <p>Get the type of the page at the position provided, only fragments that showed a page of the
+     * same type are given to the page from the pool.</p>
+     *
+     * <p>The default implementation returns <tt>0</tt> for every page.</p>
+     *
+     * @param position The relative position of the page.
+     * @return The type of the page.
+     * @see #setFragmentPoolSize(int)
+     */
+    protected int getRelativeItemType(int position) {
+        return 0;
+    }
+
+    /**
+     * <p>Re-arm a fragment taken from the pool to show the page at the position provided, such as by
+     * replacing its arguments. The fragment has been removed from the FragmentManager and goes
+     * through its whole lifecycle again once added, any saved state of the page is set after this
+     * call.</p>
+     *
+     * <p>The default implementation returns <tt>false</tt>.</p>
+     *
+     * @param position The relative position of the page.
+     * @param fragment A fragment of the class and page type of the page.
+     * @return <tt>true</tt> if the fragment can show the page, <tt>false</tt> to drop it and call
+     * {@link #getRelativeItem(int)} instead.
+     * @see #setFragmentPoolSize(int)
+     */
+    protected boolean rebindRelativeItem(int position, Fragment fragment) {
+        return false;
+    }
+
     /**
      * Create the page for the given position.  The adapter is responsible for adding the view to
      * the container given here, although it only must ensure this is done by the time it returns
@@ -122,34 +332,40 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
         // to do. This can happen when we are restoring the entire pager
         // from its saved state, where the fragment manager has already
         // taken care of restoring the fragments we previously had instantiated.
-        Fragment f;
-        if (mFragments.size() > position) {
-            f = mFragments.get(position);
-            if (f != null) {
-                return f;
-            }
+        restorePendingState(position);
+        Fragment f = mFragments.get(position);
+        if (f != null) {
+            return f;
+        }
+        if (hasStableIds()) {
+            mItemIds.put(position, getRelativeItemId(position));
         }
 
         if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
+            mCurTransaction = new FragmentOps<Fragment>();
         }
-        f = getRelativeItem(position);
+        f = mDetachedFragments.get(position);
+        if (f != null) {
+            // The RetentionPolicy kept the fragment, only its view needs to be created again.
+            mDetachedFragments.remove(position);
+            mCurTransaction.attach(f);
+            FragmentCompat.setMenuVisibility(f, false);
+            FragmentCompat.setUserVisibleHint(f, false);
+            mFragments.set(position, f);
+            return f;
+        }
+        f = obtainRelativeItem(position);
 
         if (f.getView() != null) {
             mCurTransaction.remove(f);
         }
 
-        if (mSavedState.size() > position) {
-            Fragment.SavedState fss = mSavedState.get(position);
-            if (fss != null && !f.isAdded()) {
-                f.setInitialSavedState(fss);
-            } else if (f.isAdded()) {
-                Log.e(TAG, "Error when instantiating Fragment: " + f + ", FragmentSavedState: " + fss + ", fragment already added: " + f
-                        .isAdded());
-            }
-        }
-        while (mFragments.size() <= position) {
-            mFragments.add(null);
+        Fragment.SavedState fss = mSavedState.get(position);
+        if (fss != null && !f.isAdded()) {
+            f.setInitialSavedState(fss);
+        } else if (f.isAdded()) {
+            Log.e(TAG, "Error when instantiating Fragment: " + f + ", FragmentSavedState: " + fss + ", fragment already added: " + f
+                    .isAdded());
         }
 
         FragmentCompat.setMenuVisibility(f, false);
@@ -171,24 +387,98 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
      */
     public void destroyRelativeItem(ViewGroup container, int position, Object object) {
         Fragment fragment = (Fragment) object;
+        // The state of the fragment is checked below, so it must be up to date.
+        mCommitScheduler.flush(fragment);
         if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+        mFragments.remove(position);
+        final int retention = retainRelativeItem(position, object);
+        if (retention == RetentionPolicy.DISCARD) {
+            mItemIds.remove(position);
         }
-        while (mSavedState.size() <= position) {
-            mSavedState.add(null);
-            if (mFragments.size() <= position) {
-                mFragments.add(null);
+        if (isReleased(fragment)) {
+            // The state was saved and the fragment removed when it was released.
+            if (retention == RetentionPolicy.DISCARD) {
+                mSavedState.remove(position);
             }
+            return;
+        }
+        if (retention == RetentionPolicy.DETACH && fragment != null) {
+            mSavedState.remove(position);
+            mDetachedFragments.put(position, fragment);
+            mCurTransaction.detach(fragment);
+            return;
         }
-        if (fragment != null && fragment.isAdded()) {
-            mSavedState.set(position, mFragmentManager.saveFragmentInstanceState(fragment));
+        if (retention == RetentionPolicy.SAVE_STATE && fragment != null && fragment.isAdded()) {
+            mSavedState.put(position, mFragmentManager.saveFragmentInstanceState(fragment));
         } else {
-            mSavedState.set(position, null);
+            mSavedState.remove(position);
+        }
+        mCurTransaction.remove(fragment);
+        recycleFragment(position, fragment);
+    }
+
+    /**
+     * Remove a detached fragment demoted by the RetentionPolicy, keeping its saved state if asked.
+     */
+    @Override
+    protected void onRetentionChanged(int position, int retention) {
+        Fragment fragment = mDetachedFragments.get(position);
+        mCommitScheduler.flush(fragment);
+        if (fragment != null) {
+            mDetachedFragments.remove(position);
+            if (mCurTransaction == null) {
+                mCurTransaction = new FragmentOps<Fragment>();
+            }
+            if (retention == RetentionPolicy.SAVE_STATE) {
+                mSavedState.put(position, mFragmentManager.saveFragmentInstanceState(fragment));
+            }
+            mCurTransaction.remove(fragment);
+            recycleFragment(position, fragment);
+        }
+        if (retention == RetentionPolicy.DISCARD) {
+            mSavedState.remove(position);
+            mItemIds.remove(position);
+        }
+    }
+
+    @Override
+    protected long getRelativeItemSize(int position, Object object) {
+        return object == null ? 0 : estimateViewSize(((Fragment) object).getView());
+    }
+
+    /**
+     * Save the state of the fragment and remove it, keeping the instance so it can be added again
+     * from its saved state once the user turns back towards it.
+     */
+    @Override
+    protected void releaseRelativeItem(ViewGroup container, int position, Object object) {
+        Fragment fragment = (Fragment) object;
+        mCommitScheduler.flush(fragment);
+        if (mCurTransaction == null) {
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+        if (fragment.isAdded()) {
+            mSavedState.put(position, mFragmentManager.saveFragmentInstanceState(fragment));
         }
-        mFragments.set(position, null);
         mCurTransaction.remove(fragment);
     }
 
+    @Override
+    protected void restoreRelativeItem(ViewGroup container, int position, Object object) {
+        Fragment fragment = (Fragment) object;
+        mCommitScheduler.flush(fragment);
+        if (mCurTransaction == null) {
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+        Fragment.SavedState fss = mSavedState.get(position);
+        if (fss != null && !fragment.isAdded()) {
+            fragment.setInitialSavedState(fss);
+        }
+        mCurTransaction.add(container.getId(), fragment);
+    }
+
     /**
      * Called to inform the adapter of which item is currently considered to be the "primary", that
      * is the one show to the user as the current page.
@@ -198,6 +488,11 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
      * @param object    The same object that was returned by {@link #instantiateItem(android.view.View, int)}.
      */
     public void setRelativePrimaryItem(ViewGroup container, int position, Object object) {
+        if (object != null && mCurrentPrimaryItem != null && mCurrentPrimaryItem.equals(object)) {
+            // We are already on the correct page.
+            return;
+        }
+
         if (mCurrentPrimaryItem != null) {
             FragmentCompat.setMenuVisibility(mCurrentPrimaryItem, false);
             FragmentCompat.setUserVisibleHint(mCurrentPrimaryItem, false);
@@ -213,125 +508,554 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
     @Override
     public void finishUpdate(ViewGroup container) {
         if (mCurTransaction != null) {
-            try {
-                mCurTransaction.commitAllowingStateLoss();
-                mCurTransaction = null;
-                mFragmentManager.executePendingTransactions();
-            } catch (Exception e) {
-                e.printStackTrace();
+            mCommitScheduler.commit(mCurTransaction, getPrimaryItem());
+            mCurTransaction = null;
+        }
+    }
+
+    /**
+     * Get the scheduler committing the changes to the fragments, to set whether the fragments of
+     * the pages next to the current page are created at once or later, and to measure the time
+     * taken.
+     *
+     * @return The scheduler committing the changes to the fragments.
+     * @see FragmentCommitScheduler#setMode(int)
+     */
+    public FragmentCommitScheduler<Fragment> getCommitScheduler() {
+        return mCommitScheduler;
+    }
+
+    /**
+     * <p>Set the number of removed fragments kept for each fragment class and page type, to be
+     * given to new pages rather than allocating new fragments. Defaults to <tt>0</tt>, allocating
+     * a new fragment through {@link #getRelativeItem(int)} for every page.</p>
+     *
+     * <p>A fragment is only taken from the pool for the pages whose class is returned by
+     * {@link #getRelativeItemClass(int)}, and once {@link #rebindRelativeItem(int, Fragment)} has
+     * re-armed it for its new page. Use {@link #getRelativeItemType(int)} to keep fragments of the
+     * same class showing different kinds of page apart.</p>
+     *
+     * <p>Unlike {@link com.github.paradam.support.v4.infinitepager.InfiniteFragmentStatePagerAdapter},
+     * this adapter does not keep the fragments of destroyed pages to find the new position of their
+     * page when the data set changes, the saved states of destroyed pages are only followed by
+     * their item id. Every fragment removed from its page can therefore be pooled, whatever is
+     * kept of the page.</p>
+     *
+     * @param size The maximum number of fragments kept for each class and page type.
+     * @see #getRecycledFragmentCount()
+     */
+    public void setFragmentPoolSize(int size) {
+        mFragmentPool.setMaxPerType(Math.max(size, 0));
+    }
+
+    /**
+     * @return The maximum number of removed fragments kept for each class and page type.
+     */
+    public int getFragmentPoolSize() {
+        return mFragmentPool.getMaxPerType();
+    }
+
+    /**
+     * @return The number of pages given a fragment from the pool rather than a new fragment.
+     */
+    public int getRecycledFragmentCount() {
+        return mRecycledCount;
+    }
+
+    /**
+     * Get the fragment for a page that has none, taking one from the pool if possible, otherwise
+     * calling {@link #getRelativeItem(int)}.
+     *
+     * @param position The relative position of the page.
+     * @return The fragment of the page.
+     */
+    private Fragment obtainRelativeItem(int position) {
+        if (mFragmentPool.size() > 0) {
+            final Class<? extends Fragment> fragmentClass = getRelativeItemClass(position);
+            if (fragmentClass != null) {
+                final int type = getRelativeItemType(position);
+                Fragment fragment;
+                // Fragments with an operation in the current update are still in use.
+                while ((fragment = mFragmentPool.take(fragmentClass, type, mCurTransaction)) != null) {
+                    // The fragment may still be waiting to be removed.
+                    mCommitScheduler.flush(fragment);
+                    if (!fragment.isAdded() && fragment.getView() == null) {
+                        fragment.setInitialSavedState(null);
+                        if (rebindRelativeItem(position, fragment)) {
+                            mRecycledCount++;
+                            return fragment;
+                        }
+                    }
+                }
             }
         }
+        final Fragment fragment = getRelativeItem(position);
+        // The sub-class may keep its own fragments, which must not also be given to another page.
+        mFragmentPool.remove(fragment);
+        mCommitScheduler.flush(fragment);
+        return fragment;
+    }
+
+    /**
+     * Pool a fragment that has been removed from its page, if the pool is enabled.
+     *
+     * <p>The removed fragment is not needed once its state has been saved, so unlike the support
+     * version no check is made of what is kept of the page, see {@link #setFragmentPoolSize(int)}.</p>
+     *
+     * @param position  The relative position of the page.
+     * @param fragment  The fragment.
+     */
+    private void recycleFragment(int position, Fragment fragment) {
+        if (fragment == null || fragment == mCurrentPrimaryItem || mFragmentPool.getMaxPerType() == 0) {
+            return;
+        }
+        mFragmentPool.put(getRelativeItemType(position), fragment);
     }
 
     @Override
     public void notifyDataSetChanged() {
+        if (isBatchUpdating()) {
+            // The fragments are moved once the batch ends.
+            super.notifyDataSetChanged();
+            return;
+        }
         onPreNotifyDataSetChange();
+        restorePendingState();
+        final boolean stableIds = hasStableIds();
+        // The saved states are moved along with the data, so keep only the state of the detached
+        // fragments that can not be followed by their item id.
+        for (int x = mDetachedFragments.size() - 1; x >= 0; x--) {
+            final int position = mDetachedFragments.keyAt(x);
+            if (!stableIds || mItemIds.get(position) == null) {
+                onRetentionChanged(position, RetentionPolicy.SAVE_STATE);
+            }
+        }
         final int count = getRelativeCount();
         final int margin = getMargin();
 
-        ArrayList<Fragment.SavedState> newSavedState = new ArrayList<Fragment.SavedState>(count);
-        ArrayList<Fragment> newFragments = new ArrayList<Fragment>(count);
+        // The new position of each page with an item id.
+        SparseIntArray movedIds = stableIds ? moveItemIds(count) : new SparseIntArray();
+        SparseIntArray newPositions = new SparseIntArray();
+        PageTable<Fragment> newFragments = new PageTable<Fragment>();
 
         int length = mFragments.size();
 
-        for (int x = 0; x < length; x++) {
-            int position = getItemPosition(mFragments.get(x));
-            switch (position) {
-                case POSITION_UNCHANGED:
-                    while (newFragments.size() < x + 1) {
-                        newFragments.add(null);
-                        newSavedState.add(null);
-                    }
-                    newFragments.set(x, mFragments.get(x));
-                    if (mSavedState.size() > x) {
-                        newSavedState.set(x, mSavedState.get(x));
-                    }
-                    break;
-                case POSITION_NONE:
-                    // Do not add fragment.
-                    if (mCurTransaction == null) {
-                        mCurTransaction = mFragmentManager.beginTransaction();
-                    }
-                    mCurTransaction.remove(mFragments.get(x));
-                    break;
-                default:
+        for (int i = 0; i < length; i++) {
+            final int x = mFragments.keyAt(i);
+            final Fragment fragment = mFragments.valueAt(i);
+            int position = movedIds.get(x, POSITION_UNCHANGED);
+            if (position == POSITION_UNCHANGED) {
+                position = getItemPosition(fragment);
+                if (position == POSITION_UNCHANGED) {
+                    position = x;
+                } else if (position != POSITION_NONE) {
                     position = (position - margin + count) % count;
-                    while (newFragments.size() < position + 1) {
-                        newFragments.add(null);
-                        newSavedState.add(null);
-                    }
-                    newFragments.set(position, mFragments.get(x));
-                    if (mSavedState.size() > x) {
-                        newSavedState.set(position, mSavedState.get(x));
-                    }
+                }
+            }
+            if (position == POSITION_NONE) {
+                // Do not add fragment, nor keep its saved state.
+                newPositions.put(x, POSITION_NONE);
+                if (mCurTransaction == null) {
+                    mCurTransaction = new FragmentOps<Fragment>();
+                }
+                mCurTransaction.remove(fragment);
+            } else {
+                newFragments.set(position, fragment);
+                newPositions.put(x, position);
             }
         }
 
-        mSavedState = newSavedState;
+        // Move the saved states to their new positions. A state whose page has neither a fragment
+        // nor an item id, such as a restored state, stays where it is unless a page that is
+        // followed moves there.
+        final int[] positions = mSavedState.positions();
+        final int[] moved = new int[positions.length];
+        int moves = 0;
+        for (int x = 0; x < positions.length; x++) {
+            moved[x] = newPositions.get(positions[x], movedIds.get(positions[x], POSITION_UNCHANGED));
+            if (moved[x] == POSITION_UNCHANGED && positions[x] >= count) {
+                moved[x] = POSITION_NONE;
+            }
+            if (moved[x] != POSITION_UNCHANGED) {
+                moves++;
+            }
+        }
+        final int[] from = new int[moves];
+        final int[] to = new int[moves];
+        for (int x = 0, y = 0; x < positions.length; x++) {
+            if (moved[x] != POSITION_UNCHANGED) {
+                from[y] = positions[x];
+                to[y++] = moved[x];
+            }
+        }
+        mSavedState.move(from, to);
+
+        // Only the detached fragments with an item id are left, move them along with their id.
+        SparseArray<Fragment> newDetachedFragments = new SparseArray<Fragment>();
+        for (int x = 0; x < mDetachedFragments.size(); x++) {
+            final int position = movedIds.get(mDetachedFragments.keyAt(x), POSITION_NONE);
+            if (position >= 0) {
+                newDetachedFragments.put(position, mDetachedFragments.valueAt(x));
+            } else {
+                if (mCurTransaction == null) {
+                    mCurTransaction = new FragmentOps<Fragment>();
+                }
+                mCurTransaction.remove(mDetachedFragments.valueAt(x));
+            }
+        }
+        mDetachedFragments = newDetachedFragments;
         mFragments = newFragments;
 
+        // The RetentionPolicy was cleared, so offer it the detached fragments again.
+        final int[] detached = new int[mDetachedFragments.size()];
+        for (int x = 0; x < detached.length; x++) {
+            detached[x] = mDetachedFragments.keyAt(x);
+        }
+        for (int position : detached) {
+            final Fragment fragment = mDetachedFragments.get(position);
+            if (fragment != null) {
+                final int retention = retainRelativeItem(position, fragment);
+                if (retention != RetentionPolicy.DETACH) {
+                    onRetentionChanged(position, retention);
+                }
+            }
+        }
+
         super.notifyDataSetChanged();
     }
 
+    /**
+     * Move the fragments, detached fragments and saved states of the pages to their new positions,
+     * removing the detached fragments of the pages that were removed or changed.
+     */
+    @Override
+    protected void onRelativeUpdate(PageUpdate update) {
+        restorePendingState();
+        update.apply(mFragments);
+        update.apply(mSavedState);
+        for (int x = 0; x < mDetachedFragments.size(); x++) {
+            if (update.getNewPosition(mDetachedFragments.keyAt(x)) == PageUpdate.NONE) {
+                if (mCurTransaction == null) {
+                    mCurTransaction = new FragmentOps<Fragment>();
+                }
+                mCurTransaction.remove(mDetachedFragments.valueAt(x));
+            }
+        }
+        mDetachedFragments = movePositions(mDetachedFragments, update);
+        mItemIds = movePositions(mItemIds, update);
+    }
+
+    /**
+     * Follow the item id of each page instantiated since the data set last changed to its new
+     * position, keeping only the item ids still in the data set.
+     *
+     * @param count The relative number of pages in the new data set.
+     * @return The new relative position of each page with an item id, {@link #POSITION_NONE} if
+     * its item id is no longer in the data set.
+     */
+    private SparseIntArray moveItemIds(int count) {
+        SparseIntArray movedIds = new SparseIntArray();
+        SparseArray<Long> newItemIds = new SparseArray<Long>();
+        HashMap<Long, Integer> positions = null;
+        for (int x = 0; x < mItemIds.size(); x++) {
+            final int oldPosition = mItemIds.keyAt(x);
+            final Long itemId = mItemIds.valueAt(x);
+            int position = POSITION_NONE;
+            if (oldPosition < count && getRelativeItemId(oldPosition) == itemId) {
+                position = oldPosition;
+            } else {
+                if (positions == null) {
+                    // Only index the new data set once an item is found to have moved.
+                    positions = new HashMap<Long, Integer>();
+                    for (int y = 0; y < count; y++) {
+                        positions.put(getRelativeItemId(y), y);
+                    }
+                }
+                final Integer newPosition = positions.get(itemId);
+                if (newPosition != null) {
+                    position = newPosition;
+                }
+            }
+            movedIds.put(oldPosition, position);
+            if (position != POSITION_NONE) {
+                newItemIds.put(position, itemId);
+            }
+        }
+        mItemIds = newItemIds;
+        return movedIds;
+    }
+
     @Override
     public Parcelable saveState() {
+        mCommitScheduler.flush();
+        restorePendingState();
         Bundle state = null;
-        if (mSavedState.size() > 0) {
+        final int[] positions = mSavedState.positions();
+        final int primary = getRelativePosition(getPageMapper().getPrimaryPosition());
+        final int count = getRelativeCount();
+        int length = 0;
+        for (int x = 0; x < positions.length; x++) {
+            if (isInSavedStateWindow(positions[x], primary, count) && mSavedState.peek(positions[x]) != null) {
+                positions[length++] = positions[x];
+            }
+        }
+        if (length > 0) {
             state = new Bundle();
-            Fragment.SavedState[] fss = new Fragment.SavedState[mSavedState.size()];
-            mSavedState.toArray(fss);
-            state.putParcelableArray("states", fss);
+            final int[] statePositions = new int[length];
+            final Fragment.SavedState[] fss = new Fragment.SavedState[length];
+            for (int x = 0; x < length; x++) {
+                statePositions[x] = positions[x];
+                fss[x] = mSavedState.peek(positions[x]);
+            }
+            state.putIntArray("statePositions", statePositions);
+            state.putParcelableArray("stateValues", fss);
         }
+        SparseArray<Fragment> fragments = new SparseArray<Fragment>();
         for (int i = 0; i < mFragments.size(); i++) {
-            Fragment f = mFragments.get(i);
-            if (f != null) {
-                if (state == null) {
-                    state = new Bundle();
-                }
-                String key = "f" + i;
-                mFragmentManager.putFragment(state, key, f);
+            Fragment f = mFragments.valueAt(i);
+            if (f.isAdded()) {
+                fragments.put(mFragments.keyAt(i), f);
+            }
+        }
+        if (fragments.size() > 0) {
+            if (state == null) {
+                state = new Bundle();
+            }
+            putFragments(state, "fragmentPositions", "fragments", fragments);
+        }
+        if (mDetachedFragments.size() > 0) {
+            if (state == null) {
+                state = new Bundle();
             }
+            putFragments(state, "detachedPositions", "detached", mDetachedFragments);
+        }
+        if (mItemIds.size() > 0) {
+            if (state == null) {
+                state = new Bundle();
+            }
+            final int[] idPositions = new int[mItemIds.size()];
+            final long[] ids = new long[idPositions.length];
+            for (int x = 0; x < idPositions.length; x++) {
+                idPositions[x] = mItemIds.keyAt(x);
+                ids[x] = mItemIds.valueAt(x);
+            }
+            state.putIntArray("idPositions", idPositions);
+            state.putLongArray("ids", ids);
         }
         if (state != null) {
+            state.putInt("version", STATE_VERSION);
             state.putInt("currentPrimaryItem", mFragments.indexOf(mCurrentPrimaryItem));
         }
+
         return state;
     }
 
+    /**
+     * Put a set of fragments in the saved state of the adapter, as an array of their positions and
+     * a Bundle keyed by the index of each position.
+     *
+     * @param state        The saved state of the adapter.
+     * @param positionsKey The key to put the positions under.
+     * @param fragmentsKey The key to put the Bundle of fragments under.
+     * @param fragments    The fragments keyed by their relative position.
+     */
+    private void putFragments(Bundle state, String positionsKey, String fragmentsKey, SparseArray<Fragment> fragments) {
+        final int[] positions = new int[fragments.size()];
+        final Bundle bundle = new Bundle();
+        for (int x = 0; x < fragments.size(); x++) {
+            positions[x] = fragments.keyAt(x);
+            mFragmentManager.putFragment(bundle, Integer.toString(x), fragments.valueAt(x));
+        }
+        state.putIntArray(positionsKey, positions);
+        state.putBundle(fragmentsKey, bundle);
+    }
+
+    /**
+     * Check if a saved state should be written to the saved state of the adapter.
+     *
+     * @param position The relative position of the saved state.
+     * @param primary  The relative position of the primary item.
+     * @param count    The number of relative pages.
+     * @return <tt>true</tt> if within {@link #getSavedStateWindow()} of the primary item.
+     */
+    private boolean isInSavedStateWindow(int position, int primary, int count) {
+        if (mSavedStateWindow < 0) {
+            return true;
+        }
+        int distance = Math.abs(position - primary);
+        if (count > 0) {
+            distance = Math.min(distance, count - distance);
+        }
+        return distance <= mSavedStateWindow;
+    }
+
+    /**
+     * The saved states and fragments are only read from the state once their position is first
+     * instantiated, or when every position is needed such as when the data set changes.
+     */
     @Override
     public void restoreState(Parcelable state, ClassLoader loader) {
         if (state != null) {
             Bundle bundle = (Bundle) state;
             bundle.setClassLoader(loader);
-            Parcelable[] fss = bundle.getParcelableArray("states");
             mSavedState.clear();
             mFragments.clear();
-            if (fss != null) {
-                for (Parcelable ss : fss) {
-                    mSavedState.add((Fragment.SavedState) ss);
+            mDetachedFragments.clear();
+            mItemIds.clear();
+            mFragmentPool.clear();
+            mPendingState = null;
+            if (bundle.getInt("version", 1) < STATE_VERSION) {
+                restoreLegacyState(bundle);
+                return;
+            }
+            final int[] idPositions = bundle.getIntArray("idPositions");
+            final long[] ids = bundle.getLongArray("ids");
+            if (idPositions != null && ids != null) {
+                for (int x = 0; x < idPositions.length; x++) {
+                    mItemIds.put(idPositions[x], ids[x]);
                 }
             }
-            int currentPrimaryItem = bundle.getInt("currentPrimaryItem");
-            Iterable<String> keys = bundle.keySet();
-            for (String key : keys) {
-                if (key.startsWith("f")) {
-                    int index = Integer.parseInt(key.substring(1));
-                    Fragment f = null;
-                    try {
-                        f = mFragmentManager.getFragment(bundle, key);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    if (f != null) {
-                        while (mFragments.size() <= index) {
-                            mFragments.add(null);
-                        }
-                        FragmentCompat.setMenuVisibility(f, index == currentPrimaryItem);
-                        FragmentCompat.setUserVisibleHint(f, index == currentPrimaryItem);
-                        mFragments.set(index, f);
-                    } else {
-                        Log.w(TAG, "Bad fragment at key " + key);
-                    }
+            mPendingState = bundle;
+            mPendingStates = indexPositions(bundle.getIntArray("statePositions"));
+            mPendingFragments = indexPositions(bundle.getIntArray("fragmentPositions"));
+            mPendingDetached = indexPositions(bundle.getIntArray("detachedPositions"));
+            // Nothing is pending if the state is empty.
+            restorePendingState(-1);
+        }
+    }
+
+    /**
+     * Map each position to its index in the given array.
+     *
+     * @param positions The positions, may be <code>null</code>.
+     * @return The index of each position.
+     */
+    private static SparseIntArray indexPositions(int[] positions) {
+        SparseIntArray index = new SparseIntArray();
+        if (positions != null) {
+            for (int x = 0; x < positions.length; x++) {
+                index.put(positions[x], x);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Read the saved state and fragment of a position from the state given to
+     * {@link #restoreState(android.os.Parcelable, ClassLoader)}, if not yet read.
+     *
+     * @param position The relative position.
+     */
+    private void restorePendingState(int position) {
+        if (mPendingState == null) {
+            return;
+        }
+        int index = mPendingStates.get(position, -1);
+        if (index >= 0) {
+            mPendingStates.delete(position);
+            Parcelable[] fss = mPendingState.getParcelableArray("stateValues");
+            mSavedState.put(position, (Fragment.SavedState) fss[index]);
+        }
+        index = mPendingFragments.get(position, -1);
+        if (index >= 0) {
+            mPendingFragments.delete(position);
+            Fragment f = getPendingFragment("fragments", index);
+            if (f != null) {
+                final boolean visible = mPendingState.getInt("currentPrimaryItem") == position;
+                FragmentCompat.setMenuVisibility(f, visible);
+                FragmentCompat.setUserVisibleHint(f, visible);
+                mFragments.set(position, f);
+            }
+        }
+        index = mPendingDetached.get(position, -1);
+        if (index >= 0) {
+            mPendingDetached.delete(position);
+            Fragment f = getPendingFragment("detached", index);
+            if (f != null) {
+                mDetachedFragments.put(position, f);
+            }
+        }
+        if (mPendingStates.size() == 0 && mPendingFragments.size() == 0 && mPendingDetached.size() == 0) {
+            mPendingState = null;
+        }
+    }
+
+    /**
+     * Read every saved state and fragment not yet read from the state given to
+     * {@link #restoreState(android.os.Parcelable, ClassLoader)}.
+     */
+    private void restorePendingState() {
+        while (mPendingState != null) {
+            if (mPendingStates.size() > 0) {
+                restorePendingState(mPendingStates.keyAt(0));
+            } else if (mPendingFragments.size() > 0) {
+                restorePendingState(mPendingFragments.keyAt(0));
+            } else {
+                restorePendingState(mPendingDetached.keyAt(0));
+            }
+        }
+    }
+
+    /**
+     * Get a fragment put in the saved state by {@link #putFragments(android.os.Bundle, String, String, android.util.SparseArray)}.
+     *
+     * @param key   The key of the Bundle of fragments.
+     * @param index The index of the fragment.
+     * @return The Fragment, <code>null</code> if it no longer exists.
+     */
+    private Fragment getPendingFragment(String key, int index) {
+        Fragment f = null;
+        try {
+            f = mFragmentManager.getFragment(mPendingState.getBundle(key), Integer.toString(index));
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+        if (f == null) {
+            Log.w(TAG, "Bad fragment at key " + key + index);
+        }
+        return f;
+    }
+
+    /**
+     * Restore the state written before the saved states were kept sparsely, with one saved state
+     * for every position up to the largest position visited and a key for each fragment.
+     *
+     * @param bundle The saved state of the adapter.
+     */
+    private void restoreLegacyState(Bundle bundle) {
+        Parcelable[] fss = bundle.getParcelableArray("states");
+        if (fss != null) {
+            for (int x = 0; x < fss.length; x++) {
+                mSavedState.put(x, (Fragment.SavedState) fss[x]);
+            }
+        }
+        int currentPrimaryItem = bundle.getInt("currentPrimaryItem");
+        Iterable<String> keys = bundle.keySet();
+        for (String key : keys) {
+            if (key.startsWith("f")) {
+                int index = Integer.parseInt(key.substring(1));
+                Fragment f = null;
+                try {
+                    f = mFragmentManager.getFragment(bundle, key);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                if (f != null) {
+                    FragmentCompat.setMenuVisibility(f, index == currentPrimaryItem);
+                    FragmentCompat.setUserVisibleHint(f, index == currentPrimaryItem);
+                    mFragments.set(index, f);
+                } else {
+                    Log.w(TAG, "Bad fragment at key " + key);
+                }
+            } else if (key.startsWith("d")) {
+                Fragment f = null;
+                try {
+                    f = mFragmentManager.getFragment(bundle, key);
+                } catch (Exception e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+                if (f != null) {
+                    mDetachedFragments.put(Integer.parseInt(key.substring(1)), f);
                 }
             }
         }
@@ -348,33 +1072,27 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
         return getRelativeItem(getRelativePosition(position));
     }
 
-    @Override
-    public void setPrimaryItem(ViewGroup container, int position, Object object) {
-        if (object != null && mCurrentPrimaryItem != null && mCurrentPrimaryItem.equals(object)) {
-            // We are already on the correct page.
-            return;
-        }
-
-        super.setPrimaryItem(container, position, object);
-    }
-
     /**
      * Returns the absolute position of object, or {@link #POSITION_NONE} if the reported position
      * of the object as returned by {@link #getRelativeItemPosition(Object)} is {@link
      * #POSITION_NONE}. <p/> <p>Use {@link #getRelativeItemPosition(Object)} to get the position
-     * expected by sub-classes.</p>
+     * expected by sub-classes.</p> <p>When the adapter {@link #hasStableIds() has stable ids} the
+     * position the fragment was moved to by {@link #notifyDataSetChanged()} is returned instead.</p>
      *
      * @see #getRelativeItemPosition(Object)
      */
     @Override
     public int getItemPosition(Object object) {
+        if (isUpdatingPositions()) {
+            return super.getItemPosition(object);
+        }
         if (object == null) {
             return POSITION_UNCHANGED;
         }
-        int objectPosition = mFragments.indexOf(object); // Current position of the object in the Pager.
+        int objectPosition = mFragments.indexOf(object); // Current position of the object in the Pager, by identity.
         int relativeObjectPosition = POSITION_UNCHANGED;
         int returnedPosition = POSITION_NONE;
-        if (objectPosition >= 0) {
+        if (objectPosition >= 0 && !hasStableIds()) {
             relativeObjectPosition = getRelativeItemPosition(object); // The position of this Object.
         }
 
@@ -394,8 +1112,7 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
      */
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        final int margin = getMargin();
-        if (position < margin - 1 || position > getRelativeCount() + margin) {
+        if (!getPageMapper().isInstantiable(position, getPageMapper().getRelativeCount())) {
             return null;
         }
 
@@ -415,6 +1132,7 @@ public abstract class InfiniteFragmentStatePagerAdapter extends InfinitePagerAda
      * @return An array of Fragments.
      */
     protected final Fragment[] getFragments() {
+        restorePendingState();
         return mFragments.toArray(new Fragment[getRelativeCount()]);
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.github.paradam.infinitepager.core.ListDiff;
+import com.github.paradam.infinitepager.core.PageUpdate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Keeps the list of items shown by an {@link InfinitePagerAdapter}, and when it is replaced by a
+ * new list works out which pages were inserted, removed, moved or changed so only those pages are
+ * created again, see {@link com.github.paradam.infinitepager.core.ListDiff}.</p>
+ *
+ * <p>The adapter should return the size of {@link #getList()} from
+ * {@link InfinitePagerAdapter#getRelativeCount()} and create the page of the item at each position.
+ * Each list submitted must not be changed afterwards, submit a new list instead.</p>
+ *
+ * <p>If a background Executor is set, lists larger than the threshold are compared on it and the
+ * adapter is notified on the main thread once the comparison is done. A list submitted while an
+ * earlier list is being compared replaces it, and the result for the earlier list is dropped.
+ * {@link #getList()} returns the list the pages currently show until then.</p>
+ *
+ * <p>Must be used from the main thread.</p>
+ *
+ * @param <T> The type of the items.
+ * @author Adam Parr
+ */
+public class InfiniteListDiffer<T> {
+    /**
+     * The default number of items above which lists are compared on the background Executor.
+     */
+    public static final int DEFAULT_BACKGROUND_THRESHOLD = 1000;
+
+    /**
+     * The adapter notified of the changes.
+     */
+    private final InfinitePagerAdapter mAdapter;
+
+    /**
+     * Compares the items of the lists.
+     */
+    private final ListDiff.ItemCallback<T> mCallback;
+
+    /**
+     * Posts the results of comparisons made on the background Executor to the main thread.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The list the pages currently show.
+     */
+    private List<T> mList = Collections.emptyList();
+
+    /**
+     * The Executor to compare large lists on, <tt>null</tt> to compare every list at once.
+     */
+    private Executor mBackgroundExecutor;
+
+    /**
+     * The number of items above which lists are compared on the background Executor.
+     */
+    private int mBackgroundThreshold = DEFAULT_BACKGROUND_THRESHOLD;
+
+    /**
+     * <tt>true</tt> to look for items that were moved.
+     */
+    private boolean mDetectMoves = true;
+
+    /**
+     * Incremented for each list submitted, so the results for lists since replaced are dropped.
+     */
+    private int mGeneration;
+
+    /**
+     * Constructor that accepts the adapter to notify and the callback to compare items with.
+     *
+     * @param adapter  The adapter showing the items.
+     * @param callback Compares the items of the lists.
+     */
+    public InfiniteListDiffer(InfinitePagerAdapter adapter, ListDiff.ItemCallback<T> callback) {
+        mAdapter = adapter;
+        mCallback = callback;
+    }
+
+    /**
+     * Set the Executor to compare large lists on.
+     *
+     * @param executor  The Executor, <tt>null</tt> to compare every list on the main thread.
+     * @param threshold The number of items, in the old and new list together, above which lists
+     *                  are compared on the Executor.
+     */
+    public void setBackgroundExecutor(Executor executor, int threshold) {
+        mBackgroundExecutor = executor;
+        mBackgroundThreshold = threshold;
+    }
+
+    /**
+     * Set whether to look for items that were moved. Otherwise a moved item is removed from its
+     * old position and inserted at its new position, creating its page again. Looking for moves
+     * takes time proportional to the product of the numbers of items removed and inserted.
+     *
+     * @param detectMoves <tt>true</tt> to look for items that were moved, the default.
+     */
+    public void setDetectMoves(boolean detectMoves) {
+        mDetectMoves = detectMoves;
+    }
+
+    /**
+     * @return The list of items the pages currently show.
+     */
+    public List<T> getList() {
+        return mList;
+    }
+
+    /**
+     * Replace the list of items, notifying the adapter of the pages that changed.
+     *
+     * @param list The new list of items, <tt>null</tt> for no items.
+     */
+    public void submitList(List<T> list) {
+        final List<T> newList = list != null ? list : Collections.<T>emptyList();
+        final List<T> oldList = mList;
+        final int generation = ++mGeneration;
+        if (newList == oldList) {
+            return;
+        } else if (oldList.isEmpty() || newList.isEmpty()) {
+            // Every page is created or destroyed, there is nothing to compare.
+            mList = newList;
+            mAdapter.notifyDataSetChanged();
+            return;
+        }
+
+        if (mBackgroundExecutor == null || oldList.size() + newList.size() <= mBackgroundThreshold) {
+            apply(newList, ListDiff.calculate(oldList, newList, mCallback, mDetectMoves));
+            return;
+        }
+        final boolean detectMoves = mDetectMoves;
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PageUpdate update = ListDiff.calculate(oldList, newList, mCallback, detectMoves);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Drop the result if a newer list was submitted meanwhile.
+                        if (generation == mGeneration) {
+                            apply(newList, update);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the new list of items, moving the pages as worked out by the comparison.
+     *
+     * @param list   The new list of items.
+     * @param update The change from the current list to the new list.
+     */
+    private void apply(List<T> list, PageUpdate update) {
+        mList = list;
+        mAdapter.notifyRelativeUpdate(update);
+    }
+}
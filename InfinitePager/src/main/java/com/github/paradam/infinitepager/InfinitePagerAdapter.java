@@ -17,8 +17,20 @@
 package com.github.paradam.infinitepager;
 
 import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
+import android.util.SparseArray;
+import android.view.View;
 import android.view.ViewGroup;
 
+import com.github.paradam.infinitepager.core.FixedRetentionPolicy;
+import com.github.paradam.infinitepager.core.InfinitePageMapper;
+import com.github.paradam.infinitepager.core.PageUpdate;
+import com.github.paradam.infinitepager.core.RetentionPolicy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * <p>This class extends the support class of {@link android.support.v4.view.PagerAdapter}, as such
  * most of the information for that class is also true for this class and sub-classes with only a
@@ -72,6 +84,12 @@ import android.view.ViewGroup;
  * removed, or changing position. The InfiniteViewPager will keep the current page active provided
  * the adapter implements the method {@link #getRelativeItemPosition(Object)}.</p>
  *
+ * <p>When only a few pages are inserted, removed, moved or changed, call one of the
+ * <code>notifyRelativeItem...</code> methods such as {@link #notifyRelativeItemInserted(int)}
+ * instead. Only the pages after the change are moved, without
+ * {@link #getRelativeItemPosition(Object)} being called, and the current page stays on the same
+ * relative page even when it is on the other side of the seam between the last and first page.</p>
+ *
  * <p>Sub-classes that do override any of the methods found within {@link android.support.v4.view.PagerAdapter}
  * should call through to the super method where possible or failing that, call through to that methods
  * associated ...Relative... method, using {@link #getRelativePosition(int)} to adjust the position
@@ -88,6 +106,38 @@ import android.view.ViewGroup;
  * normal PagerAdapter. For the Adapter to behave as an infinitely scrollable list there needs to be
  * at least {@value #MIN} items, fewer and it will behave as a normal PagerAdapter</p>
  *
+ * <p>When the offscreen page limit of the InfiniteViewPager is raised above <tt>1</tt>, the margin
+ * becomes one more than the limit, and the minimum number of items as returned by
+ * {@link #getMinimumCount()} becomes two more than twice the limit.</p>
+ *
+ * <p>By default only {@value #MARGIN} additional pages are placed either side of the real pages, with
+ * the InfiniteViewPager switching back to the real pages each time the user scrolls past the first
+ * or last page. Calling {@link #setVirtualMode(boolean)} instead repeats the real pages until there
+ * are around {@value com.github.paradam.infinitepager.core.InfinitePageMapper#VIRTUAL_COUNT} pages,
+ * so the InfiniteViewPager only needs to switch back to the real pages after the user has scrolled a
+ * long way in one direction. Either way, when it does the pages already instantiated are handed over
+ * to their new positions without {@link #destroyRelativeItem(android.view.ViewGroup, int, Object)}
+ * or {@link #instantiateRelativeItem(android.view.ViewGroup, int)} being called for them.</p>
+ *
+ * <p>When the user mostly scrolls in one direction, {@link #setTrailingPageLimit(int)} allows the
+ * pages behind the direction of travel to be released sooner than the pages ahead of it. Pages
+ * further behind the current page than the limit are passed to
+ * {@link #releaseRelativeItem(android.view.ViewGroup, int, Object)} while the InfiniteViewPager still
+ * keeps them, and passed to {@link #restoreRelativeItem(android.view.ViewGroup, int, Object)} if the
+ * user turns back towards them. Raise the offscreen page limit of the InfiniteViewPager to keep more
+ * pages ahead.</p>
+ *
+ * <p>What is kept of a page once the InfiniteViewPager no longer needs it is decided by the
+ * {@link com.github.paradam.infinitepager.core.RetentionPolicy} set through
+ * {@link #setRetentionPolicy(com.github.paradam.infinitepager.core.RetentionPolicy)}. Sub-classes
+ * ask the policy through {@link #retainRelativeItem(int, Object)} when destroying a page, and are
+ * told through {@link #onRetentionChanged(int, int)} when the policy demotes a page it has
+ * retained.</p>
+ *
+ * <p>Pages implementing {@link PageVisibilityListener} are told whether they are visible, next to
+ * the current page, further offscreen or about to be destroyed, so they can pause their work while
+ * they cannot be seen, see {@link PageVisibilityHelper}.</p>
+ *
  * @author Adam Parr
  */
 public abstract class InfinitePagerAdapter extends PagerAdapter {
@@ -98,26 +148,15 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      *
      * <p>In essence <code>getRelativeItem(i)</code> is the same as <code>getItem(i+getMargin())</code>.</p>
      */
-    public static final int MARGIN = 2;
+    public static final int MARGIN = InfinitePageMapper.MARGIN;
 
     /**
      * The minimum number of pages needed before the PagerAdapter will behave as an
-     * InfinitePagerAdapter.
-     */
-    public static final int MIN = 4;
-
-    /**
-     * A page other than the first or last is the primary item.
-     */
-    private static final int SWITCHER_OTHER = 0;
-    /**
-     * The first page is the primary item.
-     */
-    private static final int SWITCHER_FIRST = 1;
-    /**
-     * The last page is the primary item.
+     * InfinitePagerAdapter, when the offscreen page limit of the ViewPager is <tt>1</tt>.
+     *
+     * @see #getMinimumCount()
      */
-    private static final int SWITCHER_LAST  = 2;
+    public static final int MIN = InfinitePageMapper.MIN;
 
     /**
      * The InfinitePagerAdapter has not yet been attached to a ViewPager yet.
@@ -135,14 +174,11 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
     private static final int INFINITE_ADAPTER = 1;
 
     /**
-     * The number of additional pages per side to simulate.
+     * Maps the absolute positions of the ViewPager to the relative positions of this adapter,
+     * holding the current relative size of the PagerAdapter and the number of additional pages per
+     * side to simulate.
      */
-    private int margin = MARGIN;
-
-    /**
-     * The current relative size of the PagerAdapter
-     */
-    private int mCount = -1;
+    private final InfinitePageMapper mMapper = new InfinitePageMapper();
 
     /**
      * {@link #NOT_SET} is not set, {@link #INFINITE_ADAPTER} if the ViewPager as provided through
@@ -152,13 +188,479 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
     private int attachedToInfiniteViewPager = NOT_SET;
 
     /**
-     * The state of the Switcher.
+     * The pages currently instantiated, keyed by their absolute position.
+     */
+    private final SparseArray<Object> mPages = new SparseArray<Object>();
+
+    /**
+     * While re-centring, the instantiated pages keyed by their relative position that can be handed
+     * to their new absolute position instead of being instantiated again. <code>null</code> when not
+     * re-centring.
+     */
+    private SparseArray<Object> mHandOffPages = null;
+
+    /**
+     * While re-centring, the pages the ViewPager has asked to be destroyed that have not yet been
+     * handed to their new absolute position, keyed by their relative position.
+     */
+    private SparseArray<Object> mParkedPages = null;
+
+    /**
+     * The container of the pages in {@link #mParkedPages}.
+     */
+    private ViewGroup mParkedContainer = null;
+
+    /**
+     * The number of pages to keep behind the primary item in the direction the user is scrolling,
+     * <tt>-1</tt> to keep the same number of pages either side.
+     */
+    private int mTrailingPageLimit = -1;
+
+    /**
+     * The direction the user is scrolling, as reported by the InfiniteViewPager.
+     */
+    private int mDirection = InfinitePageMapper.DIRECTION_NONE;
+
+    /**
+     * The scroll state of the InfiniteViewPager, as reported by the InfiniteViewPager.
+     */
+    private int mScrollState = ViewPager.SCROLL_STATE_IDLE;
+
+    /**
+     * <tt>true</tt> to only pass a new primary item on to
+     * {@link #setRelativePrimaryItem(android.view.ViewGroup, int, Object)} once the pager is idle.
+     */
+    private boolean mDeferPrimaryItem = false;
+
+    /**
+     * <tt>true</tt> if a primary item is waiting for the pager to become idle.
+     */
+    private boolean mPrimaryPending = false;
+
+    /**
+     * The relative position of the primary item waiting for the pager to become idle.
+     */
+    private int mPendingPrimaryPosition = POSITION_NONE;
+
+    /**
+     * The primary item waiting for the pager to become idle.
+     */
+    private Object mPendingPrimaryItem = null;
+
+    /**
+     * The object last given to {@link #setPrimaryItem(android.view.ViewGroup, int, Object)}.
+     */
+    private Object mPrimaryObject = null;
+
+    /**
+     * The last visibility each page was told, see {@link PageVisibilityListener}.
+     */
+    private final IdentityHashMap<Object, Integer> mPageVisibility = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * The visibility of each page being worked out by {@link #updatePageVisibility()}.
+     */
+    private final IdentityHashMap<Object, Integer> mNextVisibility = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * The pages that have been released as they were too far behind the primary item.
+     */
+    private final ArrayList<Object> mReleasedPages = new ArrayList<Object>();
+
+    /**
+     * The container last given to {@link #setPrimaryItem(android.view.ViewGroup, int, Object)}.
+     */
+    private ViewGroup mContainer = null;
+
+    /**
+     * Decides what is kept of each page once the ViewPager no longer needs it.
+     */
+    private RetentionPolicy mRetentionPolicy = null;
+
+    /**
+     * While the ViewPager is told about an incremental change, the new absolute position of each
+     * instantiated page, {@link #POSITION_NONE} for the pages that were removed or changed.
+     * <code>null</code> otherwise.
+     */
+    private IdentityHashMap<Object, Integer> mUpdatedPositions = null;
+
+    /**
+     * <tt>true</tt> while the pages removed by an incremental change are destroyed, nothing is
+     * retained of them.
+     */
+    private boolean mDiscarding = false;
+
+    /**
+     * The number of calls to {@link #beginBatchUpdate()} not yet matched by a call to
+     * {@link #endBatchUpdate()}.
+     */
+    private int mBatchDepth = 0;
+
+    /**
+     * <tt>true</tt> if {@link #notifyDataSetChanged()} was called during the current batch.
+     */
+    private boolean mBatchDataSetChanged = false;
+
+    /**
+     * The incremental changes told during the current batch as one change, <code>null</code> if
+     * there were none.
+     */
+    private PageUpdate mBatchUpdate = null;
+
+    /**
+     * The number of notifications received during the current batch.
+     */
+    private int mBatchNotifications = 0;
+
+    /**
+     * The number of notifications merged into other notifications by batches.
+     */
+    private int mCoalescedNotifications = 0;
+
+    /**
+     * Passes the pages demoted by {@link #mRetentionPolicy} to {@link #onRetentionChanged(int, int)}.
+     */
+    private final RetentionPolicy.Callback mRetentionCallback = new RetentionPolicy.Callback() {
+        @Override
+        public void onRetentionChanged(int position, int retention) {
+            InfinitePagerAdapter.this.onRetentionChanged(position, retention);
+        }
+    };
+
+    /**
+     * Constructor setting the default RetentionPolicy, which keeps nothing of the pages the
+     * ViewPager no longer needs.
+     */
+    public InfinitePagerAdapter() {
+        setRetentionPolicy(new FixedRetentionPolicy(RetentionPolicy.DISCARD));
+    }
+
+    /**
+     * <p>Set if the real pages should be repeated either side of the real pages until there are
+     * around {@value com.github.paradam.infinitepager.core.InfinitePageMapper#VIRTUAL_COUNT} pages,
+     * rather than only a few pages either side.<p/>
      *
-     * @see #SWITCHER_OTHER
-     * @see #SWITCHER_FIRST
-     * @see #SWITCHER_LAST
+     * <p>This changes the absolute position of every page, so should be called before the adapter
+     * is set on the InfiniteViewPager.</p>
+     *
+     * @param virtual <tt>true</tt> to enable virtual mode.
      */
-    private int switcher = SWITCHER_OTHER;
+    public void setVirtualMode(boolean virtual) {
+        mMapper.setVirtual(virtual);
+    }
+
+    /**
+     * @return <tt>true</tt> if virtual mode is enabled.
+     * @see #setVirtualMode(boolean)
+     */
+    public boolean isVirtualMode() {
+        return mMapper.isVirtual();
+    }
+
+    /**
+     * <p>Set the number of pages to keep behind the current page in the direction the user is
+     * scrolling, any pages the InfiniteViewPager keeps further behind are released through
+     * {@link #releaseRelativeItem(android.view.ViewGroup, int, Object)} until the user turns back
+     * towards them.</p>
+     *
+     * <p>Pages ahead of the current page are kept up to the offscreen page limit of the
+     * InfiniteViewPager, so this is only useful with a limit of <tt>0</tt> up to one less than the
+     * offscreen page limit.</p>
+     *
+     * @param limit The number of pages to keep behind the current page, or <tt>-1</tt> (the default)
+     *              to keep the same number of pages either side.
+     */
+    public void setTrailingPageLimit(int limit) {
+        mTrailingPageLimit = limit;
+    }
+
+    /**
+     * @return The number of pages kept behind the current page, or <tt>-1</tt> if the same number of
+     * pages are kept either side.
+     * @see #setTrailingPageLimit(int)
+     */
+    public int getTrailingPageLimit() {
+        return mTrailingPageLimit;
+    }
+
+    /**
+     * Called by the InfiniteViewPager when the direction the user is scrolling changes, the pages
+     * kept are updated the next time the primary item is set.
+     *
+     * @param direction One of {@link InfinitePageMapper#DIRECTION_BACKWARD},
+     *                  {@link InfinitePageMapper#DIRECTION_NONE} or {@link InfinitePageMapper#DIRECTION_FORWARD}.
+     */
+    void setScrollDirection(int direction) {
+        mDirection = direction;
+    }
+
+    /**
+     * Called by the InfiniteViewPager when its scroll state changes, passing on the primary item
+     * that was deferred while the pager was moving once it becomes idle, and updating the
+     * visibility of the pages either side of the primary item.
+     *
+     * @param state One of {@link ViewPager#SCROLL_STATE_IDLE}, {@link ViewPager#SCROLL_STATE_DRAGGING}
+     *              or {@link ViewPager#SCROLL_STATE_SETTLING}.
+     */
+    void setScrollState(int state) {
+        final boolean moving = mScrollState != ViewPager.SCROLL_STATE_IDLE;
+        mScrollState = state;
+        if (state == ViewPager.SCROLL_STATE_IDLE) {
+            dispatchPendingPrimaryItem();
+        }
+        if (moving != (state != ViewPager.SCROLL_STATE_IDLE) && mPrimaryObject != null) {
+            updatePageVisibility();
+        }
+    }
+
+    /**
+     * <p>Set whether the primary item is only passed on to
+     * {@link #setRelativePrimaryItem(android.view.ViewGroup, int, Object)} once the InfiniteViewPager
+     * is idle.</p>
+     *
+     * <p>While the user drags or a fling settles, the ViewPager may change the primary item several
+     * times, each change making sub-classes such as {@link InfiniteFragmentPagerAdapter} update the
+     * menu visibility and user visible hint of two pages. When deferred, only the page the pager
+     * settles on is made primary, and nothing is done at all if the pager settles back on the
+     * page it started from. The pages are still created, kept and released as the primary item
+     * changes, only the signal is deferred.</p>
+     *
+     * <p>Has no effect unless the adapter is set on an InfiniteViewPager, which reports its scroll
+     * state. Turning deferral off passes on any primary item that is waiting.</p>
+     *
+     * @param defer <tt>true</tt> to defer the primary item until the pager is idle, <tt>false</tt>
+     *              to pass on each primary item as it is set (the default).
+     */
+    public void setDeferPrimaryItem(boolean defer) {
+        mDeferPrimaryItem = defer;
+        if (!defer) {
+            dispatchPendingPrimaryItem();
+        }
+    }
+
+    /**
+     * Get whether the primary item is only passed on once the InfiniteViewPager is idle.
+     *
+     * @return <tt>true</tt> if the primary item is deferred.
+     * @see #setDeferPrimaryItem(boolean)
+     */
+    public boolean isDeferPrimaryItem() {
+        return mDeferPrimaryItem;
+    }
+
+    /**
+     * <p>Get the object the ViewPager last set as the primary item.</p>
+     *
+     * <p>While the primary item is deferred, see {@link #setDeferPrimaryItem(boolean)}, this is the
+     * page the pager is moving to rather than the page last passed to
+     * {@link #setRelativePrimaryItem(android.view.ViewGroup, int, Object)}, such as to prepare the
+     * page the user is about to see first.</p>
+     *
+     * @return The primary item, <code>null</code> if there is none.
+     */
+    protected final Object getPrimaryItem() {
+        return mPrimaryObject;
+    }
+
+    /**
+     * Pass on the primary item that was deferred while the pager was moving, if there is one.
+     */
+    private void dispatchPendingPrimaryItem() {
+        if (mPrimaryPending) {
+            final Object object = mPendingPrimaryItem;
+            mPrimaryPending = false;
+            mPendingPrimaryItem = null;
+            setRelativePrimaryItem(mContainer, mPendingPrimaryPosition, object);
+        }
+    }
+
+    /**
+     * <p>Set the RetentionPolicy deciding what is kept of each page once the ViewPager no longer
+     * needs it.<p/>
+     *
+     * <p>Pages retained by the previous policy are no longer tracked, so this should be called
+     * before the adapter is set on the InfiniteViewPager.</p>
+     *
+     * @param policy The RetentionPolicy to use.
+     * @see com.github.paradam.infinitepager.core.FixedRetentionPolicy
+     * @see com.github.paradam.infinitepager.core.LruRetentionPolicy
+     * @see com.github.paradam.infinitepager.core.WindowRetentionPolicy
+     * @see com.github.paradam.infinitepager.core.MemoryBudgetRetentionPolicy
+     */
+    public void setRetentionPolicy(RetentionPolicy policy) {
+        if (mRetentionPolicy != null) {
+            mRetentionPolicy.setCallback(null);
+        }
+        mRetentionPolicy = policy;
+        mRetentionPolicy.setCallback(mRetentionCallback);
+    }
+
+    /**
+     * @return The RetentionPolicy deciding what is kept of each page.
+     * @see #setRetentionPolicy(com.github.paradam.infinitepager.core.RetentionPolicy)
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return mRetentionPolicy;
+    }
+
+    /**
+     * Apply the changes made to pages demoted by the RetentionPolicy outside of an update of the
+     * ViewPager, such as after the limits of the policy are lowered in response to low memory.
+     */
+    public void applyRetentionChanges() {
+        if (mContainer != null) {
+            startUpdate(mContainer);
+            finishUpdate(mContainer);
+        }
+    }
+
+    /**
+     * Ask the RetentionPolicy what should be kept of a page the ViewPager no longer needs, to be
+     * called by sub-classes from {@link #destroyRelativeItem(android.view.ViewGroup, int, Object)}
+     * before the page is changed. Pages removed by an incremental change are always
+     * {@link RetentionPolicy#DISCARD discarded}.
+     *
+     * @param position The relative position of the page.
+     * @param object   The object representing the page.
+     * @return One of {@link RetentionPolicy#DETACH}, {@link RetentionPolicy#SAVE_STATE} or
+     * {@link RetentionPolicy#DISCARD}.
+     */
+    protected final int retainRelativeItem(int position, Object object) {
+        if (mDiscarding) {
+            return RetentionPolicy.DISCARD;
+        }
+        return mRetentionPolicy.onPageRemoved(position, getRelativeItemSize(position, object));
+    }
+
+    /**
+     * Called when the RetentionPolicy demotes a page it has retained, the sub-class should free
+     * what is no longer to be kept of the page.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param position  The relative position of the page.
+     * @param retention The new level of the page, {@link RetentionPolicy#SAVE_STATE} or
+     *                  {@link RetentionPolicy#DISCARD}.
+     */
+    protected void onRetentionChanged(int position, int retention) {
+    }
+
+    /**
+     * <p>Called when the visibility of a page changes, as the primary item moves, the
+     * InfiniteViewPager starts or stops moving, or just before the page is destroyed.</p>
+     *
+     * <p>The default implementation passes the change on to the page if it implements
+     * {@link PageVisibilityListener}. Sub-classes whose pages are held by some other object, such as
+     * a holder of a View, can override this to pass the change on to the object that does the
+     * work.</p>
+     *
+     * @param object     The object representing the page.
+     * @param visibility One of {@link PageVisibilityListener#VISIBLE},
+     *                   {@link PageVisibilityListener#ADJACENT},
+     *                   {@link PageVisibilityListener#OFFSCREEN} or
+     *                   {@link PageVisibilityListener#DESTROYED}.
+     */
+    protected void onPageVisibilityChanged(Object object, int visibility) {
+        if (object instanceof PageVisibilityListener) {
+            ((PageVisibilityListener) object).onPageVisibilityChanged(visibility);
+        }
+    }
+
+    /**
+     * Work out the visibility of every page from its distance to the primary item, telling each
+     * page whose visibility has changed. While the pager is moving the pages either side of the
+     * primary item may be shown, so they are visible too.
+     */
+    private void updatePageVisibility() {
+        final int primaryPosition = mMapper.getPrimaryPosition();
+        final int adjacent = mScrollState == ViewPager.SCROLL_STATE_IDLE
+                ? PageVisibilityListener.ADJACENT : PageVisibilityListener.VISIBLE;
+        mNextVisibility.clear();
+        if (mPrimaryObject != null) {
+            mNextVisibility.put(mPrimaryObject, PageVisibilityListener.VISIBLE);
+        }
+        for (int x = 0; x < mPages.size(); x++) {
+            final Object object = mPages.valueAt(x);
+            final int distance = Math.abs(mPages.keyAt(x) - primaryPosition);
+            final int visibility = distance == 0 ? PageVisibilityListener.VISIBLE
+                    : distance == 1 ? adjacent : PageVisibilityListener.OFFSCREEN;
+            // The same page may be kept at several positions when there are only a few pages.
+            final Integer current = mNextVisibility.get(object);
+            if (current == null || visibility < current) {
+                mNextVisibility.put(object, visibility);
+            }
+        }
+        // A page no longer tracked is about to be destroyed, it keeps its visibility until it is
+        // told it has been destroyed.
+        for (Map.Entry<Object, Integer> entry : mNextVisibility.entrySet()) {
+            final Integer old = mPageVisibility.put(entry.getKey(), entry.getValue());
+            if (old == null || !old.equals(entry.getValue())) {
+                onPageVisibilityChanged(entry.getKey(), entry.getValue());
+            }
+        }
+        mNextVisibility.clear();
+    }
+
+    /**
+     * Tell a page it is about to be destroyed, if it has been told its visibility, then destroy
+     * it.
+     *
+     * @param container        The containing View from which the page will be removed.
+     * @param relativePosition The relative position of the page.
+     * @param object           The object representing the page.
+     */
+    private void destroyPage(ViewGroup container, int relativePosition, Object object) {
+        if (mPageVisibility.remove(object) != null) {
+            onPageVisibilityChanged(object, PageVisibilityListener.DESTROYED);
+        }
+        if (mPrimaryObject == object) {
+            mPrimaryObject = null;
+        }
+        destroyRelativeItem(container, relativePosition, object);
+    }
+
+    /**
+     * Estimate the memory held by a page while detached, as used by the RetentionPolicy.
+     *
+     * <p>The default implementation estimates the size of a View page from its dimensions.</p>
+     *
+     * @param position The relative position of the page.
+     * @param object   The object representing the page.
+     * @return The estimated size in bytes.
+     */
+    protected long getRelativeItemSize(int position, Object object) {
+        return object instanceof View ? estimateViewSize((View) object) : 0;
+    }
+
+    /**
+     * Estimate the memory held by a View as the size of a 32 bit bitmap of the same dimensions.
+     *
+     * @param view The View, may be <code>null</code>.
+     * @return The estimated size in bytes.
+     */
+    protected static long estimateViewSize(View view) {
+        return view == null ? 0 : 4L * view.getWidth() * view.getHeight();
+    }
+
+    /**
+     * Get the minimum number of pages needed before the PagerAdapter will behave as an
+     * InfinitePagerAdapter for the offscreen page limit of the InfiniteViewPager it is attached to.
+     *
+     * @return The minimum number of pages, {@value #MIN} for an offscreen page limit of <tt>1</tt>.
+     */
+    public int getMinimumCount() {
+        return mMapper.getMinimumCount();
+    }
+
+    /**
+     * Called by the InfiniteViewPager to set the number of pages it keeps either side of the
+     * primary item, updating the margin to match.
+     *
+     * @param limit The offscreen page limit of the InfiniteViewPager.
+     */
+    void setOffscreenPageLimit(int limit) {
+        mMapper.setOffscreenPageLimit(limit);
+    }
 
     /**
      * Get the title of the Page at the given position.
@@ -230,6 +732,65 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
     public void setRelativePrimaryItem(ViewGroup container, int position, Object object) {
     }
 
+    /**
+     * Release a page that the ViewPager still keeps, but is further behind the current page than
+     * the limit set by {@link #setTrailingPageLimit(int)}. The page should keep what it needs to be
+     * shown again quickly, such as the Fragment instance or its saved state, while freeing what it
+     * can, such as its view hierarchy. The adapter only must ensure this is done by the time it
+     * returns from {@link #finishUpdate(android.view.ViewGroup)}.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param container The containing View of the page.
+     * @param position  The relative position of the page.
+     * @param object    The same object that was returned by {@link #instantiateRelativeItem(android.view.ViewGroup,
+     *                  int)}.
+     */
+    protected void releaseRelativeItem(ViewGroup container, int position, Object object) {
+    }
+
+    /**
+     * Restore a page previously passed to {@link #releaseRelativeItem(android.view.ViewGroup, int, Object)}
+     * as it is now within the limit set by {@link #setTrailingPageLimit(int)}, or the data set is
+     * about to change.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param container The containing View of the page.
+     * @param position  The relative position of the page.
+     * @param object    The same object that was returned by {@link #instantiateRelativeItem(android.view.ViewGroup,
+     *                  int)}.
+     */
+    protected void restoreRelativeItem(ViewGroup container, int position, Object object) {
+    }
+
+    /**
+     * Check if a page is currently released, such as when a sub-class needs to know in
+     * {@link #destroyRelativeItem(android.view.ViewGroup, int, Object)} if the page has already been
+     * passed to {@link #releaseRelativeItem(android.view.ViewGroup, int, Object)}.
+     *
+     * @param object The object representing the page.
+     * @return <tt>true</tt> if the page has been released and not restored.
+     */
+    protected final boolean isReleased(Object object) {
+        return indexOfReleased(object) >= 0;
+    }
+
+    /**
+     * Get the index of a page within {@link #mReleasedPages}, comparing by identity.
+     *
+     * @param object The object representing the page.
+     * @return The index of the page, <tt>-1</tt> if not released.
+     */
+    private int indexOfReleased(Object object) {
+        for (int x = mReleasedPages.size() - 1; x >= 0; x--) {
+            if (mReleasedPages.get(x) == object) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
     /**
      * If true, {@link #onPreNotifyDataSetChange()} has been called.
      */
@@ -240,22 +801,371 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      *
      * <p>Call this method before calling the super method {@link #notifyDataSetChanged()} if the
      * implementing class needs an updated value for the number of items or the appropriate value of
-     * {@link #margin} as returned by {@link #getMargin()}. If this method is not called, then the
+     * margin as returned by {@link #getMargin()}. If this method is not called, then the
      * relevant functions will be completed when calling the super implementation of
      * {@link #notifyDataSetChanged()}.</p>
      */
     protected void onPreNotifyDataSetChange() {
+        restoreReleasedPages();
+        mRetentionPolicy.clear();
         setCount(getRelativeCount());
         preNotifyCalled = true;
     }
 
     @Override
     public void notifyDataSetChanged() {
+        if (mBatchDepth > 0) {
+            // Told once the batch ends, along with everything else changed during it.
+            mBatchDataSetChanged = true;
+            mBatchUpdate = null;
+            mBatchNotifications++;
+            preNotifyCalled = false;
+            return;
+        }
         if (!preNotifyCalled) {
             onPreNotifyDataSetChange();
         }
+        // The ViewPager moves the pages it keeps without instantiating them again.
+        updatePagePositions();
+        // The ViewPager sets the primary item again once it has found its new position.
+        mPrimaryPending = false;
+        mPendingPrimaryItem = null;
         super.notifyDataSetChanged();
         preNotifyCalled = false;
+        releaseTrailingPages();
+    }
+
+    /**
+     * Move every page to the position the ViewPager is about to move it to, as given by
+     * {@link #getItemPosition(Object)}, dropping the pages that are no longer present.
+     */
+    private void updatePagePositions() {
+        final int size = mPages.size();
+        final int[] positions = new int[size];
+        final Object[] objects = new Object[size];
+        for (int x = 0; x < size; x++) {
+            positions[x] = mPages.keyAt(x);
+            objects[x] = mPages.valueAt(x);
+        }
+        mPages.clear();
+        for (int x = 0; x < size; x++) {
+            final int position = getItemPosition(objects[x]);
+            if (position == POSITION_UNCHANGED) {
+                mPages.put(positions[x], objects[x]);
+            } else if (position != POSITION_NONE) {
+                mPages.put(position, objects[x]);
+            }
+        }
+    }
+
+    /**
+     * <p>Start a batch of changes to the data set. Until the matching call to
+     * {@link #endBatchUpdate()}, calls to {@link #notifyDataSetChanged()} and the
+     * <code>notifyRelativeItem...</code> methods are held back, and the ViewPager and every other
+     * observer is told once the batch ends, with the pages being instantiated, destroyed and moved
+     * in a single update. Incremental changes are told as one incremental change unless
+     * {@link #notifyDataSetChanged()} was also called, in which case everything is treated as
+     * changed.</p>
+     *
+     * <p>Batches may be nested, only the outermost batch tells the ViewPager. The batch should end
+     * before the ViewPager next lays out its pages, such as within the same message on the main
+     * thread, as the ViewPager is shown the old pages until then.</p>
+     *
+     * @see #getCoalescedNotificationCount()
+     */
+    public void beginBatchUpdate() {
+        mBatchDepth++;
+    }
+
+    /**
+     * End a batch of changes started by {@link #beginBatchUpdate()}, telling the ViewPager of the
+     * changes made during the batch if it is the outermost batch.
+     *
+     * @throws IllegalStateException If there is no batch to end.
+     */
+    public void endBatchUpdate() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatchUpdate() called without beginBatchUpdate()");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+        final boolean dataSetChanged = mBatchDataSetChanged;
+        final PageUpdate update = mBatchUpdate;
+        if (mBatchNotifications > 1) {
+            mCoalescedNotifications += mBatchNotifications - 1;
+        }
+        mBatchDataSetChanged = false;
+        mBatchUpdate = null;
+        mBatchNotifications = 0;
+        if (dataSetChanged) {
+            notifyDataSetChanged();
+        } else if (update != null) {
+            notifyRelativeUpdate(update);
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> while a batch started by {@link #beginBatchUpdate()} has not ended.
+     */
+    public final boolean isBatchUpdating() {
+        return mBatchDepth > 0;
+    }
+
+    /**
+     * @return The number of notifications that were merged into another notification by
+     * {@link #beginBatchUpdate()} batches, and so did not update the ViewPager on their own.
+     */
+    public int getCoalescedNotificationCount() {
+        return mCoalescedNotifications;
+    }
+
+    /**
+     * Notify the ViewPager that a page has been inserted.
+     *
+     * @param position The relative position of the page inserted.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemInserted(int position) {
+        notifyRelativeUpdate(PageUpdate.inserted(position, 1));
+    }
+
+    /**
+     * Notify the ViewPager that a number of pages have been inserted.
+     *
+     * @param positionStart The relative position of the first page inserted.
+     * @param itemCount     The number of pages inserted.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemRangeInserted(int positionStart, int itemCount) {
+        notifyRelativeUpdate(PageUpdate.inserted(positionStart, itemCount));
+    }
+
+    /**
+     * Notify the ViewPager that a page has been removed.
+     *
+     * @param position The relative position the page was at.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemRemoved(int position) {
+        notifyRelativeUpdate(PageUpdate.removed(position, 1));
+    }
+
+    /**
+     * Notify the ViewPager that a number of pages have been removed.
+     *
+     * @param positionStart The relative position of the first page removed.
+     * @param itemCount     The number of pages removed.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemRangeRemoved(int positionStart, int itemCount) {
+        notifyRelativeUpdate(PageUpdate.removed(positionStart, itemCount));
+    }
+
+    /**
+     * Notify the ViewPager that a page has been moved.
+     *
+     * @param fromPosition The relative position the page was at.
+     * @param toPosition   The relative position the page is now at.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemMoved(int fromPosition, int toPosition) {
+        notifyRelativeUpdate(PageUpdate.moved(fromPosition, toPosition));
+    }
+
+    /**
+     * Notify the ViewPager that a page has changed and should be created again.
+     *
+     * @param position The relative position of the page changed.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemChanged(int position) {
+        notifyRelativeUpdate(PageUpdate.changed(position, 1));
+    }
+
+    /**
+     * Notify the ViewPager that a number of pages have changed and should be created again.
+     *
+     * @param positionStart The relative position of the first page changed.
+     * @param itemCount     The number of pages changed.
+     * @see #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)
+     */
+    public void notifyRelativeItemRangeChanged(int positionStart, int itemCount) {
+        notifyRelativeUpdate(PageUpdate.changed(positionStart, itemCount));
+    }
+
+    /**
+     * <p>Notify the ViewPager of a change to some of the pages, the rest of the data set being as it
+     * was. Call this after the data of the sub-class has been changed.<p/>
+     *
+     * <p>The instantiated pages that were removed or changed are destroyed at once keeping nothing
+     * of them, sub-classes then move what they keep of the other pages through
+     * {@link #onRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)} and the ViewPager is
+     * told the new position of each page it holds. {@link #getRelativeItemPosition(Object)} is not
+     * called. If the current page was removed, the page after it becomes the current page, crossing
+     * the seam between the last and first page if needed.</p>
+     *
+     * @param update The change to the pages.
+     */
+    public void notifyRelativeUpdate(PageUpdate update) {
+        if (mBatchDepth > 0) {
+            if (!mBatchDataSetChanged) {
+                mBatchUpdate = mBatchUpdate == null ? update : mBatchUpdate.then(update);
+            }
+            mBatchNotifications++;
+            return;
+        }
+        if (mHandOffPages != null || preNotifyCalled) {
+            // The pages are being handed over to new positions, treat it as a change to everything.
+            notifyDataSetChanged();
+            return;
+        }
+        restoreReleasedPages();
+        final int oldMargin = mMapper.getMargin();
+        final int oldCount = mMapper.getRelativeCount();
+        final int primary = mMapper.getPrimaryPosition();
+        final int relativePrimary = primary >= 0 && oldCount > 0 ? getRelativePosition(primary) : -1;
+
+        final int size = mPages.size();
+        final int[] positions = new int[size];
+        final int[] relativePositions = new int[size];
+        final Object[] objects = new Object[size];
+        for (int x = 0; x < size; x++) {
+            positions[x] = mPages.keyAt(x);
+            relativePositions[x] = getRelativePosition(positions[x]);
+            objects[x] = mPages.valueAt(x);
+        }
+        mPages.clear();
+
+        if (mContainer != null) {
+            startUpdate(mContainer);
+        }
+        // Destroy the pages that were removed or changed, keeping nothing of them.
+        mUpdatedPositions = new IdentityHashMap<Object, Integer>();
+        mDiscarding = true;
+        for (int x = 0; x < size; x++) {
+            if (update.getNewPosition(relativePositions[x]) == PageUpdate.NONE && !mUpdatedPositions.containsKey(objects[x])) {
+                mUpdatedPositions.put(objects[x], POSITION_NONE);
+                destroyPage(mContainer, relativePositions[x], objects[x]);
+            }
+        }
+        mDiscarding = false;
+        mRetentionPolicy.onPositionsChanged(update);
+        if (mPrimaryPending) {
+            // Follow the deferred primary item to its new position.
+            mPendingPrimaryPosition = update.getNewPosition(mPendingPrimaryPosition);
+            if (mPendingPrimaryPosition == PageUpdate.NONE) {
+                mPrimaryPending = false;
+                mPendingPrimaryItem = null;
+            }
+        }
+        onRelativeUpdate(update);
+        if (relativePrimary >= 0) {
+            final int count = getRelativeCount();
+            if (count > 0) {
+                // A primary page removed from the end is replaced by the first page.
+                mRetentionPolicy.onPrimaryChanged(update.getTargetPosition(relativePrimary) % count, count);
+            }
+        }
+        if (mContainer != null) {
+            finishUpdate(mContainer);
+        }
+        setCount(getRelativeCount());
+
+        // Keep each page in the same copy of the real pages, so the pages either side of the seam stay together.
+        for (int x = 0; x < size; x++) {
+            final int relativePosition = update.getNewPosition(relativePositions[x]);
+            if (relativePosition != PageUpdate.NONE) {
+                final int position = moveAbsolutePosition(positions[x], relativePositions[x], relativePosition, oldMargin, oldCount);
+                mPages.put(position, objects[x]);
+                mUpdatedPositions.put(objects[x], position);
+            }
+        }
+
+        int anchor = -1;
+        if (relativePrimary >= 0 && mMapper.getRelativeCount() > 0) {
+            // Follow the current page, or the page after it if it was removed.
+            final int target = update.getTargetPosition(relativePrimary);
+            if (target < mMapper.getRelativeCount()) {
+                anchor = moveAbsolutePosition(primary, relativePrimary, target, oldMargin, oldCount);
+            } else {
+                // The last pages were removed, the page after them is the first page of the next copy.
+                anchor = moveAbsolutePosition(primary + oldCount - relativePrimary, 0, 0, oldMargin, oldCount);
+            }
+        }
+
+        super.notifyDataSetChanged();
+        mUpdatedPositions = null;
+        releaseTrailingPages();
+
+        if (anchor >= 0 && mContainer instanceof ViewPager && ((ViewPager) mContainer).getCurrentItem() != anchor) {
+            ((ViewPager) mContainer).setCurrentItem(anchor, false);
+        }
+    }
+
+    /**
+     * Called by {@link #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)} once
+     * the instantiated pages that were removed or changed have been destroyed, sub-classes should
+     * move what they keep of the pages to the new positions and remove what they kept of the pages
+     * that were removed or changed. Any transaction started is committed by the call to
+     * {@link #finishUpdate(android.view.ViewGroup)} that follows.
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @param update The change to the pages.
+     */
+    protected void onRelativeUpdate(PageUpdate update) {
+    }
+
+    /**
+     * Get the absolute position a page is moved to by an incremental change, in the same copy of
+     * the real pages as it was before, or the real pages if that copy no longer exists.
+     *
+     * @param position            The absolute position of the page before the change.
+     * @param relativePosition    The relative position of the page before the change.
+     * @param newRelativePosition The relative position of the page after the change.
+     * @param oldMargin           The margin before the change.
+     * @param oldCount            The relative number of pages before the change.
+     * @return The absolute position of the page after the change.
+     */
+    private int moveAbsolutePosition(int position, int relativePosition, int newRelativePosition, int oldMargin, int oldCount) {
+        final int copy = (position - oldMargin - relativePosition) / oldCount;
+        final int newPosition = mMapper.getMargin() + newRelativePosition + copy * mMapper.getRelativeCount();
+        if (newPosition < 0 || newPosition >= mMapper.getCount()) {
+            return mMapper.getPosition(newRelativePosition);
+        }
+        return newPosition;
+    }
+
+    /**
+     * Move the values of a SparseArray keyed by relative position to the positions of their pages
+     * after an incremental change, leaving out the values of the pages that were removed or changed.
+     *
+     * @param array  The values keyed by relative position.
+     * @param update The change to the pages.
+     * @param <T>    The type of the values.
+     * @return A new SparseArray of the values at their new positions.
+     */
+    protected static <T> SparseArray<T> movePositions(SparseArray<T> array, PageUpdate update) {
+        final SparseArray<T> moved = new SparseArray<T>(array.size());
+        for (int x = 0; x < array.size(); x++) {
+            final int position = update.getNewPosition(array.keyAt(x));
+            if (position != PageUpdate.NONE) {
+                moved.put(position, array.valueAt(x));
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Check if the ViewPager is being told about an incremental change, sub-classes that override
+     * {@link #getItemPosition(Object)} should then return the position given by the super method.
+     *
+     * @return <tt>true</tt> while the ViewPager is asking for the new positions of the pages after a
+     * call to {@link #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)}.
+     */
+    protected final boolean isUpdatingPositions() {
+        return mUpdatedPositions != null;
     }
 
     /**
@@ -268,12 +1178,12 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      */
     @Override
     public int getCount() {
-        if (mCount <= 0) {
+        if (mMapper.getRelativeCount() <= 0) {
             setCount(getRelativeCount());
             //	notifyDataSetChanged();
         }
 
-        return mCount + (margin * 2);
+        return mMapper.getCount();
     }
 
     /**
@@ -293,13 +1203,19 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
         if (object == null) {
             return POSITION_NONE;
         }
+        if (mUpdatedPositions != null) {
+            final Integer position = mUpdatedPositions.get(object);
+            if (position != null) {
+                return position;
+            }
+        }
         int relativeObjectPosition = getRelativeItemPosition(object); // The position of this Object.
         int returnedPosition = POSITION_NONE;
         if (relativeObjectPosition == POSITION_UNCHANGED) {
             returnedPosition = POSITION_UNCHANGED;
         } else if (relativeObjectPosition != POSITION_NONE) {
             // The items position has changed, return the new position
-            returnedPosition = relativeObjectPosition + margin;
+            returnedPosition = relativeObjectPosition + mMapper.getMargin();
         }
         return returnedPosition;
     }
@@ -319,22 +1235,89 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      */
     @Override
     public void setPrimaryItem(ViewGroup container, int position, Object object) {
-        setRelativePrimaryItem(container, getRelativePosition(position), object);
+        if (mDeferPrimaryItem && mScrollState != ViewPager.SCROLL_STATE_IDLE) {
+            mPrimaryPending = true;
+            mPendingPrimaryPosition = getRelativePosition(position);
+            mPendingPrimaryItem = object;
+        } else {
+            mPrimaryPending = false;
+            mPendingPrimaryItem = null;
+            setRelativePrimaryItem(container, getRelativePosition(position), object);
+        }
         if (attachedToInfiniteViewPager == NOT_SET) {
             attachedToInfiniteViewPager = container instanceof InfiniteViewPager ? INFINITE_ADAPTER : NORMAL_ADAPTER;
-            setCount(mCount);
-        }
-        if (position == mCount + margin || position == margin) {
-            // Page is first page
-            switcher = SWITCHER_FIRST;
-        } else if (position == margin - 1 || position == mCount + margin - 1) {
-            // Page is last page
-            switcher = SWITCHER_LAST;
-        } else {
-            switcher = SWITCHER_OTHER;
+            setCount(mMapper.getRelativeCount());
+        }
+        if (position != mMapper.getPrimaryPosition()) {
+            mRetentionPolicy.onPrimaryChanged(getRelativePosition(position), mMapper.getRelativeCount());
+        }
+        mMapper.setPrimaryPosition(position);
+        mContainer = container;
+        if (mTrailingPageLimit >= 0) {
+            updateReleasedPages(container, position);
+        }
+        mPrimaryObject = object;
+        updatePageVisibility();
+    }
+
+    /**
+     * Release the pages too far behind the primary item in the direction the user is scrolling, and
+     * restore any released pages that are no longer too far behind.
+     *
+     * @param container       The containing View of the pages.
+     * @param primaryPosition The absolute position of the primary item.
+     */
+    private void updateReleasedPages(ViewGroup container, int primaryPosition) {
+        for (int x = 0; x < mPages.size(); x++) {
+            final int position = mPages.keyAt(x);
+            final Object object = mPages.valueAt(x);
+            final boolean trailing = InfinitePageMapper.isTrailing(position, primaryPosition, mDirection, mTrailingPageLimit);
+            final int index = indexOfReleased(object);
+            if (trailing && index < 0) {
+                mReleasedPages.add(object);
+                releaseRelativeItem(container, getRelativePosition(position), object);
+            } else if (!trailing && index >= 0) {
+                mReleasedPages.remove(index);
+                restoreRelativeItem(container, getRelativePosition(position), object);
+            }
         }
     }
 
+    /**
+     * Release the pages too far behind the primary item again once the data set has changed, as
+     * every released page was restored beforehand and the ViewPager only sets the primary item
+     * again if the position of a page it keeps has changed.
+     */
+    private void releaseTrailingPages() {
+        if (mTrailingPageLimit < 0 || mContainer == null) {
+            return;
+        }
+        startUpdate(mContainer);
+        updateReleasedPages(mContainer, mMapper.getPrimaryPosition());
+        finishUpdate(mContainer);
+    }
+
+    /**
+     * Restore every released page, such as before the data set changes and the positions of the
+     * pages are no longer known.
+     */
+    private void restoreReleasedPages() {
+        if (mReleasedPages.isEmpty() || mContainer == null) {
+            return;
+        }
+        startUpdate(mContainer);
+        for (int x = 0; x < mPages.size(); x++) {
+            final Object object = mPages.valueAt(x);
+            final int index = indexOfReleased(object);
+            if (index >= 0) {
+                mReleasedPages.remove(index);
+                restoreRelativeItem(mContainer, getRelativePosition(mPages.keyAt(x)), object);
+            }
+        }
+        mReleasedPages.clear();
+        finishUpdate(mContainer);
+    }
+
     /**
      * <p>Create the page for the given position.  The adapter is responsible for adding the view to
      * the container given here, although it only must ensure this is done by the time it returns
@@ -352,7 +1335,22 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      */
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        return instantiateRelativeItem(container, getRelativePosition(position));
+        final int relativePosition = getRelativePosition(position);
+        Object object = null;
+        if (mHandOffPages != null) {
+            // Hand the page over from its old position rather than instantiating it again.
+            object = mHandOffPages.get(relativePosition);
+            mHandOffPages.remove(relativePosition);
+            mParkedPages.remove(relativePosition);
+        }
+        if (object == null) {
+            object = instantiateRelativeItem(container, relativePosition);
+            mRetentionPolicy.onPageAdded(relativePosition);
+        }
+        if (object != null) {
+            mPages.put(position, object);
+        }
+        return object;
     }
 
     /**
@@ -371,21 +1369,38 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      */
     @Override
     public void destroyItem(ViewGroup container, int position, Object object) {
-        int last = mCount + margin - 1;
-        if (position >= margin - 1 && position <= last + 1) {
-            //                       First Item (End)            Last Item (End)                                       Last Item (Start)        First Item (Start)
-            if (margin > 0 && (((position == mCount + margin || position == last) && switcher == SWITCHER_FIRST) || ((position == margin - 1 || position == margin) && switcher == SWITCHER_LAST))) {
-                // This object is beside the current active object, it should not be removed.
+        if (mUpdatedPositions != null) {
+            final Integer updated = mUpdatedPositions.get(object);
+            if (updated != null && updated == POSITION_NONE) {
+                // Already destroyed when the incremental change was notified.
                 return;
             }
-
-            if (switcher == SWITCHER_FIRST && margin == 0 && position == 1) {
-                // Case where the item at the index position 1 may be requested to be destroyed
-                // even when the current selected item is at position 0, ignore this request.
+        }
+        final boolean tracked = object != null && mPages.get(position) == object;
+        if (tracked) {
+            mPages.remove(position);
+            if (mPages.indexOfValue(object) >= 0) {
+                // The same page is also in use at another position, it should not be removed.
                 return;
             }
-
-            destroyRelativeItem(container, getRelativePosition(position), object);
+        }
+        if (mParkedPages != null && object != null) {
+            // Keep the page until re-centring has finished in case it is needed at its new position.
+            mParkedPages.put(getRelativePosition(position), object);
+            mParkedContainer = container;
+            return;
+        }
+        if (tracked || mMapper.isDestroyable(position)) {
+            if (mPrimaryPending && mPendingPrimaryItem == object) {
+                // The deferred primary item no longer exists, wait for the next one.
+                mPrimaryPending = false;
+                mPendingPrimaryItem = null;
+            }
+            destroyPage(container, getRelativePosition(position), object);
+        }
+        final int index = indexOfReleased(object);
+        if (index >= 0) {
+            mReleasedPages.remove(index);
         }
     }
 
@@ -424,12 +1439,8 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      * @param count The number of pages.
      */
     private void setCount(int count) {
-        mCount = count;
-        if (mCount < MIN || attachedToInfiniteViewPager == NORMAL_ADAPTER) {
-            margin = 0;
-        } else {
-            margin = MARGIN;
-        }
+        mMapper.setInfinite(attachedToInfiniteViewPager != NORMAL_ADAPTER);
+        mMapper.setCount(count);
     }
 
     /**
@@ -438,10 +1449,11 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      * <p>Only sub-classes that directly extend {@link com.github.paradam.infinitepager.InfinitePagerAdapter}
      * need to use this method.</p>
      *
-     * @return An integer of either 0 or 2;
+     * @return An integer of either 0 or one more than the offscreen page limit of the ViewPager,
+     * or much larger in virtual mode.
      */
     protected int getMargin() {
-        return margin;
+        return mMapper.getMargin();
     }
 
     /**
@@ -453,6 +1465,53 @@ public abstract class InfinitePagerAdapter extends PagerAdapter {
      * @return The actual position of the page as implemented by the sub-class.
      */
     protected int getRelativePosition(int position) {
-        return (position - margin + mCount) % mCount;
+        return mMapper.getRelativePosition(position);
+    }
+
+    /**
+     * Called by the InfiniteViewPager before it switches back to the real pages after crossing the
+     * seam between the last and first page, any page that is instantiated at a position representing
+     * the same relative page as an existing page will be given the existing page instead.
+     */
+    void beginRecentre() {
+        mHandOffPages = new SparseArray<Object>(mPages.size());
+        mParkedPages = new SparseArray<Object>();
+        for (int x = 0; x < mPages.size(); x++) {
+            mHandOffPages.put(getRelativePosition(mPages.keyAt(x)), mPages.valueAt(x));
+        }
+    }
+
+    /**
+     * Called by the InfiniteViewPager once it has switched back to the real pages, destroying any
+     * page that was not needed at its new position.
+     */
+    void endRecentre() {
+        final SparseArray<Object> parkedPages = mParkedPages;
+        final ViewGroup container = mParkedContainer;
+        mHandOffPages = null;
+        mParkedPages = null;
+        mParkedContainer = null;
+        if (parkedPages != null && parkedPages.size() > 0) {
+            startUpdate(container);
+            for (int x = 0; x < parkedPages.size(); x++) {
+                Object object = parkedPages.valueAt(x);
+                if (mPages.indexOfValue(object) < 0) {
+                    destroyPage(container, parkedPages.keyAt(x), object);
+                }
+            }
+            finishUpdate(container);
+        }
+    }
+
+    /**
+     * <p>Get the mapper used to map the absolute positions of the ViewPager to the relative positions
+     * of this adapter.<p/>
+     *
+     * <p>Only sub-classes that directly extend InfinitePagerAdapter need to use this method.</p>
+     *
+     * @return The InfinitePageMapper of this adapter.
+     */
+    protected final InfinitePageMapper getPageMapper() {
+        return mMapper;
     }
 }
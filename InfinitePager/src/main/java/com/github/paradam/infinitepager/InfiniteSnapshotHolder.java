@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Holds the data shown by an {@link InfinitePagerAdapter} as an immutable snapshot, so threads
+ * other than the main thread can replace the data without locking while the adapter and the
+ * ViewPager read it.</p>
+ *
+ * <p>{@link #publish(java.util.Collection)} may be called from any thread. It copies the data into a
+ * new snapshot that is swapped in on the main thread at the start of the next frame, before the
+ * ViewPager lays out its pages, and the adapter is then notified. Until then {@link #size()} and
+ * {@link #get(int)} keep returning the current snapshot, so every call made while the ViewPager
+ * populates its pages sees the same data. Snapshots published before the previous one was swapped
+ * in are skipped.</p>
+ *
+ * <p>The adapter should return {@link #size()} from {@link InfinitePagerAdapter#getRelativeCount()}
+ * and read its items through {@link #get(int)}. If an {@link InfiniteListDiffer} is given, the
+ * snapshots are submitted to it, and read from it, instead.</p>
+ *
+ * @param <T> The type of the items.
+ * @author Adam Parr
+ */
+public class InfiniteSnapshotHolder<T> {
+    /**
+     * The adapter notified when a snapshot is swapped in, <code>null</code> if a differ is used.
+     */
+    private final InfinitePagerAdapter mAdapter;
+
+    /**
+     * The differ the snapshots are submitted to, <code>null</code> to notify the adapter directly.
+     */
+    private final InfiniteListDiffer<T> mDiffer;
+
+    /**
+     * Posts the swap to the main thread.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The latest snapshot published and not yet swapped in, <code>null</code> if there is none.
+     */
+    private final AtomicReference<List<T>> mPending = new AtomicReference<List<T>>();
+
+    /**
+     * <tt>true</tt> while a swap has been posted and has not yet run.
+     */
+    private final AtomicBoolean mSwapPosted = new AtomicBoolean();
+
+    /**
+     * The snapshot being shown, only used on the main thread.
+     */
+    private List<T> mCurrent = Collections.emptyList();
+
+    /**
+     * Runs on the main thread after a snapshot was published, waiting for the next frame if the
+     * device supports it.
+     */
+    private final Runnable mSwap = new Runnable() {
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                FrameSwap.post(InfiniteSnapshotHolder.this);
+            } else {
+                swap();
+            }
+        }
+    };
+
+    /**
+     * Constructor that accepts the adapter to notify when a new snapshot is swapped in.
+     *
+     * @param adapter The adapter showing the data.
+     */
+    public InfiniteSnapshotHolder(InfinitePagerAdapter adapter) {
+        mAdapter = adapter;
+        mDiffer = null;
+    }
+
+    /**
+     * Constructor that accepts the differ to submit each new snapshot to, so only the pages that
+     * changed are created again.
+     *
+     * @param differ The differ of the adapter showing the data.
+     */
+    public InfiniteSnapshotHolder(InfiniteListDiffer<T> differ) {
+        mAdapter = null;
+        mDiffer = differ;
+    }
+
+    /**
+     * Publish new data, to be shown from the next frame. May be called from any thread.
+     *
+     * @param data The new data, copied so may be changed afterwards. <code>null</code> for no data.
+     */
+    public void publish(Collection<? extends T> data) {
+        final List<T> snapshot = data == null || data.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(new ArrayList<T>(data));
+        mPending.set(snapshot);
+        if (mSwapPosted.compareAndSet(false, true)) {
+            mHandler.post(mSwap);
+        }
+    }
+
+    /**
+     * Swap in the latest snapshot published, if any, and notify the adapter. Called on the main
+     * thread at the start of a frame, or may be called directly on the main thread to show the
+     * latest snapshot at once.
+     */
+    public void swap() {
+        mSwapPosted.set(false);
+        final List<T> snapshot = mPending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        if (mDiffer != null) {
+            mDiffer.submitList(snapshot);
+        } else {
+            mCurrent = snapshot;
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * @return The snapshot being shown, which can not be changed. Main thread only.
+     */
+    public List<T> getList() {
+        return mDiffer != null ? mDiffer.getList() : mCurrent;
+    }
+
+    /**
+     * @return The number of items in the snapshot being shown. Main thread only.
+     */
+    public int size() {
+        return getList().size();
+    }
+
+    /**
+     * @param position The relative position of the item.
+     * @return The item at the position in the snapshot being shown. Main thread only.
+     */
+    public T get(int position) {
+        return getList().get(position);
+    }
+
+    /**
+     * Waits for the next frame before swapping in a snapshot.
+     */
+    @TargetApi (Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameSwap implements Choreographer.FrameCallback {
+        /**
+         * The holder to swap the snapshot of.
+         */
+        private final InfiniteSnapshotHolder<?> mHolder;
+
+        /**
+         * Constructor that accepts the holder to swap the snapshot of.
+         *
+         * @param holder The holder.
+         */
+        private FrameSwap(InfiniteSnapshotHolder<?> holder) {
+            mHolder = holder;
+        }
+
+        /**
+         * Swap in the snapshot of a holder at the start of the next frame. Main thread only.
+         *
+         * @param holder The holder.
+         */
+        static void post(InfiniteSnapshotHolder<?> holder) {
+            Choreographer.getInstance().postFrameCallback(new FrameSwap(holder));
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mHolder.swap();
+        }
+    }
+}
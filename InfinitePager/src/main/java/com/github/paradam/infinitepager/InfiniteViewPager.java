@@ -20,6 +20,8 @@ import android.content.Context;
 import android.support.v4.view.ViewPager;
 import android.util.AttributeSet;
 
+import com.github.paradam.infinitepager.core.InfinitePageMapper;
+
 /**
  * <p>A ViewPager that handles simulating an infinite scrolling list of pages when used in conjunction
  * with an InfinitePagerAdapter. This implementation will only accept an instance of
@@ -73,6 +75,11 @@ public class InfiniteViewPager extends ViewPager {
      */
     private OnPageChangeListener mInternalPageChangeListener;
 
+    /**
+     * The direction the user is scrolling.
+     */
+    private int mScrollDirection = InfinitePageMapper.DIRECTION_NONE;
+
     /**
      * Constructor that accepts the context in which the ViewPager resides in.
      *
@@ -110,6 +117,22 @@ public class InfiniteViewPager extends ViewPager {
              */
             private int toPage = -1;
 
+            /**
+             * <tt>true</tt> while {@link #pageScrollRunner} is switching to the real page, the change
+             * in position is not a change in the direction the user is scrolling.
+             */
+            private boolean recentring = false;
+
+            /**
+             * The absolute position of the last selected page.
+             */
+            private int lastPosition = -1;
+
+            /**
+             * The current scroll state of the ViewPager.
+             */
+            private int scrollState = ViewPager.SCROLL_STATE_IDLE;
+
             /**
              * A Runnable that will set the Page Adapter {@link com.github.paradam.infinitepager.InfiniteViewPager#infinitePageAdapter}
              * to the page identified in {@link #toPage}, before then setting toPage to <code>-1</code>.
@@ -121,7 +144,15 @@ public class InfiniteViewPager extends ViewPager {
                          * Switch to the real page, don't animate transition to make it
                          * seem that the page is not changed.
                          */
-                        setRelativeCurrentItem(toPage, false);
+                        infinitePageAdapter.beginRecentre();
+                        recentring = true;
+                        try {
+                            setRelativeCurrentItem(toPage, false);
+                        } finally {
+                            recentring = false;
+                            infinitePageAdapter.endRecentre();
+                        }
+                        lastPosition = getCurrentItem();
                         toPage = -1;
                     }
                 }
@@ -129,6 +160,10 @@ public class InfiniteViewPager extends ViewPager {
 
             @Override
             public void onPageScrollStateChanged(int state) {
+                scrollState = state;
+                if (infinitePageAdapter != null) {
+                    infinitePageAdapter.setScrollState(state);
+                }
                 switch (state) {
                     case ViewPager.SCROLL_STATE_DRAGGING:
                         /*
@@ -150,6 +185,14 @@ public class InfiniteViewPager extends ViewPager {
 
             @Override
             public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+                if (scrollState == ViewPager.SCROLL_STATE_DRAGGING) {
+                    // The page to the left of the current page is given while dragging backward.
+                    if (position < getCurrentItem()) {
+                        setScrollDirection(InfinitePageMapper.DIRECTION_BACKWARD);
+                    } else if (positionOffset > 0) {
+                        setScrollDirection(InfinitePageMapper.DIRECTION_FORWARD);
+                    }
+                }
                 if (mInternalPageChangeListener != null) {
                     mInternalPageChangeListener.onPageScrolled(calculateRelative(position), positionOffset, positionOffsetPixels);
                 }
@@ -161,7 +204,7 @@ public class InfiniteViewPager extends ViewPager {
             @Override
             public void onPageSelected(int position) {
                 int calcPos = calculateRelative(position);
-                if (position - infinitePageAdapter.getMargin() != calcPos) {
+                if (infinitePageAdapter.getPageMapper().isWrapped(position, getRelativeCount())) {
                     /*
                      *  If the given position differs from the real position calculated.
                      *  Set #toPage to the page it should be on (if position is one that is
@@ -173,6 +216,12 @@ public class InfiniteViewPager extends ViewPager {
                      */
                     toPage = calcPos;
                 }
+                if (!recentring) {
+                    if (lastPosition >= 0 && position != lastPosition) {
+                        setScrollDirection(position > lastPosition ? InfinitePageMapper.DIRECTION_FORWARD : InfinitePageMapper.DIRECTION_BACKWARD);
+                    }
+                    lastPosition = position;
+                }
 
                 if (mInternalPageChangeListener != null) {
                     mInternalPageChangeListener.onPageSelected(calcPos);
@@ -196,6 +245,33 @@ public class InfiniteViewPager extends ViewPager {
         return oldListener;
     }
 
+    /**
+     * Update the direction the user is scrolling, letting the InfinitePagerAdapter know if it has
+     * changed.
+     *
+     * @param direction The new direction.
+     */
+    private void setScrollDirection(int direction) {
+        if (mScrollDirection != direction) {
+            mScrollDirection = direction;
+            if (infinitePageAdapter != null) {
+                infinitePageAdapter.setScrollDirection(direction);
+            }
+        }
+    }
+
+    /**
+     * Get the direction the user last scrolled, as used by the InfinitePagerAdapter when keeping
+     * fewer pages behind the current page.
+     *
+     * @return One of {@link InfinitePageMapper#DIRECTION_BACKWARD}, {@link InfinitePageMapper#DIRECTION_NONE}
+     * or {@link InfinitePageMapper#DIRECTION_FORWARD}.
+     * @see InfinitePagerAdapter#setTrailingPageLimit(int)
+     */
+    public int getScrollDirection() {
+        return mScrollDirection;
+    }
+
     /**
      * Calculates the relative position of the current page, where page at <code>{@link
      * com.github.paradam.infinitepager.InfinitePagerAdapter#getMargin()}</code> maps to the relative
@@ -207,10 +283,21 @@ public class InfiniteViewPager extends ViewPager {
      * @return The relative position of the page.
      */
     private int calculateRelative(int position) {
-        // Get the number of real pages.
-        int length = infinitePageAdapter.getRelativeCount();
         // Calculate the real page the given position should be.
-        return length > 0 ? (position - infinitePageAdapter.getMargin() + length) % length : 0;
+        return InfinitePageMapper.calculateRelative(position, infinitePageAdapter.getMargin(), getRelativeCount());
+    }
+
+    /**
+     * Get the relative number of pages as of the last change told to the adapter, rather than
+     * asking the adapter for the size of its data on every scroll. The count stays the same until
+     * the adapter is next notified, however the data changes meanwhile.
+     *
+     * @return The relative number of pages.
+     */
+    private int getRelativeCount() {
+        // Sets the count the first time the adapter is asked.
+        infinitePageAdapter.getCount();
+        return infinitePageAdapter.getPageMapper().getRelativeCount();
     }
 
     /**
@@ -241,19 +328,8 @@ public class InfiniteViewPager extends ViewPager {
      *                     switch directly to the page.
      */
     public void setRelativeCurrentItem(int item, boolean smoothScroll) {
-        int count = infinitePageAdapter.getRelativeCount();
-        int margin = infinitePageAdapter.getMargin();
-        int current = getRelativeCurrentItem();
-        if (margin > 0) {
-            if (current == 0 && item == count - 1) {
-                super.setCurrentItem(current + margin - 1, smoothScroll);
-                return;
-            } else if(current == count -1 && item == 0) {
-                super.setCurrentItem(count + margin, smoothScroll);
-                return;
-            }
-        }
-        super.setCurrentItem((count > 0 ? (item % count) + margin : 0), smoothScroll);
+        int count = getRelativeCount();
+        super.setCurrentItem(infinitePageAdapter.getPageMapper().getTargetPosition(getCurrentItem(), item, count), smoothScroll);
     }
 
     /**
@@ -275,8 +351,14 @@ public class InfiniteViewPager extends ViewPager {
      */
     public void setAdapter(InfinitePagerAdapter infinitePagerAdapter, int initialItem) {
         infinitePageAdapter = infinitePagerAdapter;
+        if (infinitePageAdapter != null) {
+            infinitePageAdapter.setOffscreenPageLimit(getOffscreenPageLimit());
+            infinitePageAdapter.setScrollDirection(mScrollDirection);
+        }
         super.setAdapter(infinitePageAdapter);
-        setRelativeCurrentItem(initialItem, false);
+        if (infinitePageAdapter != null) {
+            setRelativeCurrentItem(initialItem, false);
+        }
     }
 
     /**
@@ -292,6 +374,31 @@ public class InfiniteViewPager extends ViewPager {
         setAdapter((InfinitePagerAdapter) pagerAdapter);
     }
 
+    /**
+     * <p>Set the number of pages that should be retained to either side of the current page in the
+     * view hierarchy in an idle state.</p>
+     *
+     * <p>The InfinitePagerAdapter uses this to set the number of additional pages either side of the
+     * real pages, and the number of pages it needs before it behaves as an infinitely scrollable
+     * list. Changing the limit while an adapter is set will set the adapter again, keeping the
+     * current page.</p>
+     *
+     * @param limit How many pages will be kept offscreen in an idle state.
+     */
+    @Override
+    public void setOffscreenPageLimit(int limit) {
+        final int oldLimit = getOffscreenPageLimit();
+        super.setOffscreenPageLimit(limit);
+        if (infinitePageAdapter != null && getOffscreenPageLimit() != oldLimit) {
+            // Every absolute position changes along with the margin, remove the pages at their old
+            // positions before setting the adapter again.
+            final InfinitePagerAdapter adapter = infinitePageAdapter;
+            final int current = getRelativeCurrentItem();
+            super.setAdapter(null);
+            setAdapter(adapter, current);
+        }
+    }
+
     /**
      * Set a listener that will be invoked whenever the page changes or is incrementally scrolled.
      * See {@link android.support.v4.view.ViewPager.OnPageChangeListener}.
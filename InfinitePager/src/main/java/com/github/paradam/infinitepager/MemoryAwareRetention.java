@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import com.github.paradam.infinitepager.core.MemoryBudgetRetentionPolicy;
+
+/**
+ * <p>Sizes the pages an {@link InfinitePagerAdapter} keeps to the memory class of the device, and
+ * frees them in stages as the system asks the application to trim its memory.</p>
+ *
+ * <p>The adapter is given a {@link com.github.paradam.infinitepager.core.MemoryBudgetRetentionPolicy}
+ * allowing detached pages to hold up to 1/{@value #BUDGET_DIVISOR} of the memory class, and keeping
+ * up to one saved state per megabyte of the memory class. On a low RAM device both are halved. In
+ * response to {@link #onTrimMemory(int)}:</p>
+ *
+ * <ul>
+ *     <li>{@link android.content.ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE} halves the budget
+ *     for detached pages.</li>
+ *     <li>{@link android.content.ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} quarters the budget
+ *     and halves the number of saved states.</li>
+ *     <li>{@link android.content.ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL},
+ *     {@link android.content.ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN} and
+ *     {@link android.content.ComponentCallbacks2#TRIM_MEMORY_BACKGROUND} turn every detached page
+ *     into its saved state.</li>
+ *     <li>{@link android.content.ComponentCallbacks2#TRIM_MEMORY_MODERATE} also keeps only a quarter
+ *     of the saved states.</li>
+ *     <li>{@link android.content.ComponentCallbacks2#TRIM_MEMORY_COMPLETE} and {@link #onLowMemory()}
+ *     discard every saved state.</li>
+ * </ul>
+ *
+ * <p>The limits stay lowered until {@link #reset()} is called, such as when the Activity is shown
+ * again. Each instance manages a single adapter.</p>
+ *
+ * @author Adam Parr
+ */
+@TargetApi (Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public class MemoryAwareRetention implements ComponentCallbacks2 {
+    /**
+     * The fraction of the memory class detached pages may hold.
+     */
+    public static final int BUDGET_DIVISOR = 16;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /**
+     * Interface definition for a callback to be invoked when pages have been freed in response to
+     * a request to trim memory.
+     */
+    public interface OnTrimListener {
+        /**
+         * Called after pages have been freed.
+         *
+         * @param level          The level of the request to trim memory.
+         * @param fragmentsFreed The number of detached pages turned into saved state or discarded.
+         * @param statesFreed    The number of saved states discarded.
+         * @param bytesFreed     The estimated size of the detached pages freed.
+         */
+        void onTrimmed(int level, int fragmentsFreed, int statesFreed, long bytesFreed);
+    }
+
+    /**
+     * The Context the callbacks are registered with.
+     */
+    private final Context mContext;
+
+    /**
+     * The policy given to the adapter.
+     */
+    private final MemoryBudgetRetentionPolicy mPolicy;
+
+    /**
+     * The budget for detached pages before any trimming.
+     */
+    private final long mBudget;
+
+    /**
+     * The maximum number of saved states before any trimming.
+     */
+    private final int mMaxSaved;
+
+    /**
+     * The adapter using {@link #mPolicy}.
+     */
+    private InfinitePagerAdapter mAdapter = null;
+
+    /**
+     * The listener told about freed pages.
+     */
+    private OnTrimListener mOnTrimListener = null;
+
+    /**
+     * The total number of detached pages freed.
+     */
+    private int mFragmentsFreed = 0;
+
+    /**
+     * The total number of saved states freed.
+     */
+    private int mStatesFreed = 0;
+
+    /**
+     * The total estimated size of the detached pages freed.
+     */
+    private long mBytesFreed = 0;
+
+    /**
+     * Constructor that accepts a Context, reading the memory class of the device.
+     *
+     * @param context The Context.
+     */
+    public MemoryAwareRetention(Context context) {
+        mContext = context.getApplicationContext();
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am.getMemoryClass();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && am.isLowRamDevice()) {
+            memoryClass /= 2;
+        }
+        mBudget = memoryClass * MEGABYTE / BUDGET_DIVISOR;
+        mMaxSaved = memoryClass;
+        mPolicy = new MemoryBudgetRetentionPolicy(mBudget, mMaxSaved);
+    }
+
+    /**
+     * Set the RetentionPolicy of the adapter to the policy managed by this instance, and register
+     * to be told when to trim memory.
+     *
+     * @param adapter The InfinitePagerAdapter.
+     */
+    public void attach(InfinitePagerAdapter adapter) {
+        mAdapter = adapter;
+        adapter.setRetentionPolicy(mPolicy);
+        mContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Stop being told when to trim memory, the adapter keeps using the policy at its current limits.
+     */
+    public void detach() {
+        mContext.unregisterComponentCallbacks(this);
+        mAdapter = null;
+    }
+
+    /**
+     * Restore the limits of the policy to those for the memory class of the device.
+     */
+    public void reset() {
+        mPolicy.setBudget(mBudget);
+        mPolicy.setMaxDetached(Integer.MAX_VALUE);
+        mPolicy.setMaxSaved(mMaxSaved);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        final int detached = mPolicy.getDetachedCount();
+        final long size = mPolicy.getDetachedSize();
+        final int saved = mPolicy.getSavedCount();
+
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            trim(0, 0);
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            trim(0, mMaxSaved / 4);
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Also covers TRIM_MEMORY_UI_HIDDEN and TRIM_MEMORY_BACKGROUND.
+            trim(0, -1);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trim(mBudget / 4, mMaxSaved / 2);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            trim(mBudget / 2, -1);
+        } else {
+            return;
+        }
+        if (mAdapter != null) {
+            mAdapter.applyRetentionChanges();
+        }
+
+        final int fragmentsFreed = detached - mPolicy.getDetachedCount();
+        final int statesFreed = saved + fragmentsFreed - mPolicy.getSavedCount();
+        final long bytesFreed = size - mPolicy.getDetachedSize();
+        mFragmentsFreed += fragmentsFreed;
+        mStatesFreed += statesFreed;
+        mBytesFreed += bytesFreed;
+        if (mOnTrimListener != null) {
+            mOnTrimListener.onTrimmed(level, fragmentsFreed, statesFreed, bytesFreed);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Lower the limits of the policy, never raising them above their current values.
+     *
+     * @param budget   The new budget for detached pages.
+     * @param maxSaved The new maximum number of saved states, <tt>-1</tt> to leave unchanged.
+     */
+    private void trim(long budget, int maxSaved) {
+        if (budget <= 0) {
+            mPolicy.setMaxDetached(0);
+        }
+        mPolicy.setBudget(Math.min(budget, mPolicy.getBudget()));
+        if (maxSaved >= 0 && (mPolicy.getMaxSaved() < 0 || maxSaved < mPolicy.getMaxSaved())) {
+            mPolicy.setMaxSaved(maxSaved);
+        }
+    }
+
+    /**
+     * Set a listener to be told when pages are freed in response to a request to trim memory.
+     *
+     * @param listener The listener, <code>null</code> to remove.
+     */
+    public void setOnTrimListener(OnTrimListener listener) {
+        mOnTrimListener = listener;
+    }
+
+    /**
+     * @return The policy given to the adapter.
+     */
+    public MemoryBudgetRetentionPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * @return The total number of detached pages freed since this instance was created.
+     */
+    public int getFragmentsFreed() {
+        return mFragmentsFreed;
+    }
+
+    /**
+     * @return The total number of saved states discarded since this instance was created.
+     */
+    public int getStatesFreed() {
+        return mStatesFreed;
+    }
+
+    /**
+     * @return The total estimated size of the detached pages freed since this instance was created.
+     */
+    public long getBytesFreed() {
+        return mBytesFreed;
+    }
+}
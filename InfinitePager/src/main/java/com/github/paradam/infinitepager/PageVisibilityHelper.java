@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Pauses and resumes the work of a page as its visibility changes, so offscreen pages stop
+ * animating, polling and decoding without each page tracking its own visibility.</p>
+ *
+ * <p>A page implementing {@link PageVisibilityListener} passes each change on to its helper. Work
+ * is added as a {@link Pausable}, or as a task repeated at a fixed interval through
+ * {@link #addRepeatingTask(Runnable, long)}, and is active while the page is at least as visible
+ * as the visibility given to the constructor, by default only while it is
+ * {@link PageVisibilityListener#VISIBLE}. Work added while the page is active is resumed at
+ * once.</p>
+ *
+ * <p>Must only be used from the main thread.</p>
+ *
+ * @author Adam Parr
+ */
+public class PageVisibilityHelper implements PageVisibilityListener {
+    /**
+     * Work that can be paused and resumed as the visibility of its page changes.
+     */
+    public interface Pausable {
+        /**
+         * Called when the page becomes active, or when added to a helper whose page is active.
+         */
+        void onResume();
+
+        /**
+         * Called when the page is no longer active, or when removed from a helper whose page is
+         * active.
+         */
+        void onPause();
+    }
+
+    /**
+     * The least visible visibility at which the work is active.
+     */
+    private final int mActiveVisibility;
+
+    /**
+     * The work to pause and resume.
+     */
+    private final ArrayList<Pausable> mPausables = new ArrayList<Pausable>();
+
+    /**
+     * The Handler running the repeating tasks, created when first needed.
+     */
+    private Handler mHandler = null;
+
+    /**
+     * The last visibility of the page.
+     */
+    private int mVisibility = OFFSCREEN;
+
+    /**
+     * <tt>true</tt> while the work is active.
+     */
+    private boolean mActive = false;
+
+    /**
+     * Create a helper whose work is only active while the page is
+     * {@link PageVisibilityListener#VISIBLE}.
+     */
+    public PageVisibilityHelper() {
+        this(VISIBLE);
+    }
+
+    /**
+     * Create a helper whose work is active while the page is at least as visible as the given
+     * visibility.
+     *
+     * @param activeVisibility {@link PageVisibilityListener#VISIBLE}, or
+     *                         {@link PageVisibilityListener#ADJACENT} to also keep the work of the
+     *                         pages either side of the primary item active, such as to have them
+     *                         ready before they are shown.
+     */
+    public PageVisibilityHelper(int activeVisibility) {
+        if (activeVisibility < VISIBLE || activeVisibility > OFFSCREEN) {
+            throw new IllegalArgumentException("Invalid active visibility: " + activeVisibility);
+        }
+        mActiveVisibility = activeVisibility;
+    }
+
+    @Override
+    public void onPageVisibilityChanged(int visibility) {
+        mVisibility = visibility;
+        final boolean active = visibility <= mActiveVisibility;
+        if (active != mActive) {
+            mActive = active;
+            // Copy in case the work adds or removes work as it is paused or resumed.
+            final Pausable[] pausables = mPausables.toArray(new Pausable[mPausables.size()]);
+            for (Pausable pausable : pausables) {
+                if (active) {
+                    pausable.onResume();
+                } else {
+                    pausable.onPause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Add work to pause and resume, resuming it at once if the page is active.
+     *
+     * @param pausable The work to add.
+     */
+    public void add(Pausable pausable) {
+        if (!mPausables.contains(pausable)) {
+            mPausables.add(pausable);
+            if (mActive) {
+                pausable.onResume();
+            }
+        }
+    }
+
+    /**
+     * Remove work, pausing it at once if the page is active.
+     *
+     * @param pausable The work to remove.
+     */
+    public void remove(Pausable pausable) {
+        if (mPausables.remove(pausable) && mActive) {
+            pausable.onPause();
+        }
+    }
+
+    /**
+     * Run a task repeatedly while the page is active, first as soon as it becomes active and then
+     * every <code>intervalMillis</code>, such as to poll for new content.
+     *
+     * @param task           The task to run on the main thread.
+     * @param intervalMillis The time to wait between each run, in milliseconds.
+     * @return The Pausable running the task, to be given to {@link #remove(Pausable)} to stop it.
+     */
+    public Pausable addRepeatingTask(Runnable task, long intervalMillis) {
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        final Pausable pausable = new RepeatingTask(mHandler, task, intervalMillis);
+        add(pausable);
+        return pausable;
+    }
+
+    /**
+     * Get whether the work of the page is active.
+     *
+     * @return <tt>true</tt> if the page is at least as visible as the visibility given to the
+     * constructor.
+     */
+    public boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Get the last visibility of the page.
+     *
+     * @return One of {@link PageVisibilityListener#VISIBLE}, {@link PageVisibilityListener#ADJACENT},
+     * {@link PageVisibilityListener#OFFSCREEN} or {@link PageVisibilityListener#DESTROYED}.
+     */
+    public int getVisibility() {
+        return mVisibility;
+    }
+
+    /**
+     * Runs a task at a fixed interval while resumed.
+     */
+    private static class RepeatingTask implements Pausable, Runnable {
+        /**
+         * The Handler running the task.
+         */
+        private final Handler mHandler;
+
+        /**
+         * The task to run.
+         */
+        private final Runnable mTask;
+
+        /**
+         * The time to wait between each run, in milliseconds.
+         */
+        private final long mIntervalMillis;
+
+        /**
+         * <tt>true</tt> while resumed.
+         */
+        private boolean mResumed = false;
+
+        RepeatingTask(Handler handler, Runnable task, long intervalMillis) {
+            mHandler = handler;
+            mTask = task;
+            mIntervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void onResume() {
+            mResumed = true;
+            mHandler.removeCallbacks(this);
+            mHandler.post(this);
+        }
+
+        @Override
+        public void onPause() {
+            mResumed = false;
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            if (mResumed) {
+                mTask.run();
+                // The task may have paused the work while running.
+                if (mResumed) {
+                    mHandler.postDelayed(this, mIntervalMillis);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+/**
+ * <p>Implemented by the pages of an {@link InfinitePagerAdapter}, the objects returned by
+ * {@link InfinitePagerAdapter#instantiateRelativeItem(android.view.ViewGroup, int)}, to be told
+ * where they are in the window of pages kept by the InfiniteViewPager. As the fragment adapters
+ * return the fragment of each page, a fragment only needs to implement this interface.</p>
+ *
+ * <p>The visibility of a page follows the primary item, and the scroll state of the
+ * InfiniteViewPager: while the user drags or a fling settles, the pages either side of the
+ * primary item may be partly shown and are {@link #VISIBLE}, once the pager is idle they become
+ * {@link #ADJACENT} again. Pages further away are {@link #OFFSCREEN}, and every page is told it is
+ * {@link #DESTROYED} just before the adapter destroys it. Offscreen pages should stop any
+ * animation, polling or decoding, {@link PageVisibilityHelper} pauses and resumes such work
+ * automatically.</p>
+ *
+ * <p>Called on the main thread, only when the visibility of the page changes.</p>
+ *
+ * @author Adam Parr
+ * @see InfinitePagerAdapter#onPageVisibilityChanged(int, Object, int)
+ */
+public interface PageVisibilityListener {
+    /**
+     * The page is the primary item, or may be partly shown while the pager is moving.
+     */
+    int VISIBLE   = 0;
+    /**
+     * The page is next to the primary item and not shown while the pager is idle.
+     */
+    int ADJACENT  = 1;
+    /**
+     * The page is further from the primary item, kept by the pager but not about to be shown.
+     */
+    int OFFSCREEN = 2;
+    /**
+     * The page is about to be destroyed. A fragment kept by the adapter may be told of its
+     * visibility again once its page is instantiated again.
+     */
+    int DESTROYED = 3;
+
+    /**
+     * Called when the visibility of the page changes.
+     *
+     * @param visibility One of {@link #VISIBLE}, {@link #ADJACENT}, {@link #OFFSCREEN} or
+     *                   {@link #DESTROYED}.
+     */
+    void onPageVisibilityChanged(int visibility);
+}
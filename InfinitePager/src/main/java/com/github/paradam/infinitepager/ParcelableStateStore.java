@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.infinitepager;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.github.paradam.infinitepager.core.LruStateStore;
+
+/**
+ * <p>A {@link com.github.paradam.infinitepager.core.LruStateStore} for Parcelable saved states,
+ * such as Fragment.SavedState, measuring the size of each state as the number of bytes it takes
+ * when written to a Parcel.</p>
+ *
+ * <p>By default up to {@value #DEFAULT_MAX_SIZE} bytes of states are kept without a limit on their
+ * number, keeping the saved state of the adapter well within the size of a Binder transaction.</p>
+ *
+ * @param <T> The type of the saved state.
+ * @author Adam Parr
+ */
+public class ParcelableStateStore<T extends Parcelable> extends LruStateStore<T> {
+    /**
+     * The default maximum total size of the states kept in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 512 * 1024;
+
+    /**
+     * Constructor for a store keeping up to {@link #DEFAULT_MAX_SIZE} bytes of states.
+     */
+    public ParcelableStateStore() {
+        this(-1, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor that accepts the maximum number of states and their maximum total size.
+     *
+     * @param maxCount The maximum number of states kept, <tt>-1</tt> for no limit.
+     * @param maxSize  The maximum total size of the states kept in bytes, <tt>-1</tt> for no limit.
+     */
+    public ParcelableStateStore(int maxCount, long maxSize) {
+        super(maxCount, maxSize);
+    }
+
+    @Override
+    protected long sizeOf(T state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Adam Parr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.paradam.support.v4.infinitepager;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.util.Log;
+
+import com.github.paradam.infinitepager.FragmentCommitScheduler;
+import com.github.paradam.infinitepager.core.FragmentOps;
+
+/**
+ * Commits the operations recorded by a fragment adapter to its FragmentManager in a single
+ * transaction, and executes it.
+ *
+ * @author Adam Parr
+ */
+class FragmentTransactionCommitter implements FragmentCommitScheduler.Committer<Fragment> {
+    /**
+     * The FragmentManager to commit to.
+     */
+    private final FragmentManager mFragmentManager;
+
+    /**
+     * Tag to show when logging.
+     */
+    private final String mTag;
+
+    /**
+     * Constructor that accepts the FragmentManager to commit to.
+     *
+     * @param fragmentManager The FragmentManager.
+     * @param tag             Tag to show when logging.
+     */
+    FragmentTransactionCommitter(FragmentManager fragmentManager, String tag) {
+        mFragmentManager = fragmentManager;
+        mTag = tag;
+    }
+
+    @Override
+    public void commit(FragmentOps<Fragment> ops) {
+        final FragmentTransaction transaction = mFragmentManager.beginTransaction();
+        ops.commitTo(new FragmentOps.Target<Fragment>() {
+            @Override
+            public void add(int containerId, Fragment fragment, String tag) {
+                transaction.add(containerId, fragment, tag);
+            }
+
+            @Override
+            public void attach(Fragment fragment) {
+                transaction.attach(fragment);
+            }
+
+            @Override
+            public void detach(Fragment fragment) {
+                transaction.detach(fragment);
+            }
+
+            @Override
+            public void remove(Fragment fragment) {
+                transaction.remove(fragment);
+            }
+        });
+        try {
+            transaction.commitAllowingStateLoss();
+            mFragmentManager.executePendingTransactions();
+        } catch (Exception e) {
+            Log.e(mTag, e.getMessage(), e);
+        }
+    }
+}
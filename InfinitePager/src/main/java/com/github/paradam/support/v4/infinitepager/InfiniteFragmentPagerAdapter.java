@@ -16,15 +16,23 @@
 
 package com.github.paradam.support.v4.infinitepager;
 
+import android.os.Bundle;
 import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.app.FragmentTransaction;
-import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.github.paradam.infinitepager.FragmentCommitScheduler;
 import com.github.paradam.infinitepager.InfinitePagerAdapter;
+import com.github.paradam.infinitepager.core.FixedRetentionPolicy;
+import com.github.paradam.infinitepager.core.FragmentOps;
+import com.github.paradam.infinitepager.core.PageUpdate;
+import com.github.paradam.infinitepager.core.RetentionPolicy;
+
+import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * <p>A FragmentPagerAdapter that will behave as if it has an infinite number of pages, or if the
@@ -47,11 +55,20 @@ import com.github.paradam.infinitepager.InfinitePagerAdapter;
  * arbitrary amount of state. For larger sets of pages, consider
  * {@link com.github.paradam.support.v4.infinitepager.InfiniteFragmentStatePagerAdapter}.<p/>
  *
+ * <p>By default the fragment of every page is kept detached once the ViewPager no longer needs it.
+ * Set a {@link com.github.paradam.infinitepager.core.RetentionPolicy} such as
+ * {@link com.github.paradam.infinitepager.core.LruRetentionPolicy} to keep only the saved state of
+ * the pages the user has not visited recently. For example
+ * <code>setRetentionPolicy(new LruRetentionPolicy(n))</code> keeps the fragments of the <tt>n</tt>
+ * most recently left pages detached, to be attached again at once, and removes older fragments
+ * once their state has been saved, so memory does not grow with the number of pages visited.</p>
+ *
  * <p>When using InfiniteFragmentPagerAdapter the host ViewPager must have a valid ID set.</p>
  *
  * <p>Subclasses only need to implement {@link #getRelativeItem(int)} and {@link #getRelativeCount()}
  * to have a working adapter. Override {@link #getRelativeItemId(int)} if the fragments have the
- * possibility of changing positions within the ViewPager.</p>
+ * possibility of changing positions within the ViewPager, such as when pages are inserted, removed
+ * or moved through {@link #notifyRelativeUpdate(com.github.paradam.infinitepager.core.PageUpdate)}.</p>
  *
  * @author Adam Parr
  */
@@ -62,27 +79,80 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
     private static final String TAG = "InfiniteFragmentPagerAdapter";
 
     /**
-     * The current Fragment Transaction that is occurring, <code>null</code> if no there is
-     * currently no transaction.
+     * The operations on the fragments made by the current update, <code>null</code> if there is
+     * currently no update.
      */
-    private FragmentTransaction mCurTransaction  = null;
+    private FragmentOps<Fragment> mCurTransaction  = null;
     /**
      * Reference to the FragmentManager.
      */
     private FragmentManager     mFragmentManager = null;
 
+    /**
+     * Commits the operations on the fragments to the FragmentManager.
+     */
+    private final FragmentCommitScheduler<Fragment> mCommitScheduler;
+
     /**
      * The currently set visible Item.
      */
     private Fragment mCurrentPrimaryItem = null;
 
     /**
-     * Constructor that accepts a FragmentManager.
+     * The saved states of the fragments removed by the RetentionPolicy, keyed by their item id.
+     */
+    private HashMap<Long, Fragment.SavedState> mSavedState = new HashMap<Long, Fragment.SavedState>();
+
+    /**
+     * The item ids of the pages retained by the RetentionPolicy, keyed by their relative position,
+     * so what is kept of a page can still be found once the data set has changed.
+     */
+    private SparseArray<Long> mRetainedIds = new SparseArray<Long>();
+
+    /**
+     * The id of the container the fragments are added to.
+     */
+    private int mContainerId = View.NO_ID;
+
+    /**
+     * The fragments added to the FragmentManager by this adapter, attached or detached, keyed by
+     * their item id, so they can be found without {@link FragmentManager#findFragmentByTag(String)}
+     * searching every fragment of the FragmentManager.
+     */
+    private HashMap<Long, Fragment> mFragments = new HashMap<Long, Fragment>();
+
+    /**
+     * The item ids of the fragments the FragmentManager restored that have not yet been looked up
+     * by their tag and added to {@link #mFragments}.
+     */
+    private HashSet<Long> mRestoredIds = new HashSet<Long>();
+
+    /**
+     * The maximum number of detached pages whose fragment is kept attached with its view hidden.
+     */
+    private int mViewRetentionLimit = 0;
+
+    /**
+     * The fragments of detached pages kept attached with their view hidden, keyed by their
+     * relative position.
+     */
+    private SparseArray<Fragment> mHiddenFragments = new SparseArray<Fragment>();
+
+    /**
+     * The number of pages shown again from a hidden view rather than creating their view again.
+     */
+    private int mAvoidedInflationCount = 0;
+
+    /**
+     * Constructor that accepts a FragmentManager, the fragment of each page the user visits is
+     * kept detached unless another RetentionPolicy is set.
      *
      * @param fm The FragmentManager.
      */
     public InfiniteFragmentPagerAdapter(FragmentManager fm) {
         mFragmentManager = fm;
+        mCommitScheduler = new FragmentCommitScheduler<Fragment>(new FragmentTransactionCommitter(fm, TAG));
+        setRetentionPolicy(new FixedRetentionPolicy(RetentionPolicy.DETACH));
     }
 
     /**
@@ -109,19 +179,45 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
     @Override
     public Object instantiateRelativeItem(ViewGroup container, int position) {
         if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
+            mCurTransaction = new FragmentOps<Fragment>();
         }
 
         final long itemId = getRelativeItemId(position);
+        if (container.getId() != mContainerId) {
+            // The fragments of another container have different tags.
+            mFragments.clear();
+            mContainerId = container.getId();
+        }
+        mRetainedIds.remove(position);
 
         // Do we already have this fragment?
-        String name = makeFragmentName(container.getId(), itemId);
-        Fragment fragment = mFragmentManager.findFragmentByTag(name);
-        if (fragment != null) {
+        Fragment fragment = findFragment(itemId);
+        // The fragment may have been hidden at another position if its item has moved.
+        final int hiddenIndex = fragment != null ? mHiddenFragments.indexOfValue(fragment) : -1;
+        if (hiddenIndex >= 0) {
+            mHiddenFragments.removeAt(hiddenIndex);
+        }
+        final Fragment stale = mHiddenFragments.get(position);
+        if (stale != null) {
+            // The page now shows a different item.
+            mHiddenFragments.remove(position);
+            mCurTransaction.detach(stale);
+        }
+        if (hiddenIndex >= 0) {
+            // The view was kept, show it again without creating it.
+            fragment.getView().setVisibility(View.VISIBLE);
+            mAvoidedInflationCount++;
+        } else if (fragment != null) {
             mCurTransaction.attach(fragment);
         } else {
             fragment = getRelativeItem(position);
+            mCommitScheduler.flush(fragment);
+            Fragment.SavedState fss = mSavedState.remove(itemId);
+            if (fss != null && !fragment.isAdded()) {
+                fragment.setInitialSavedState(fss);
+            }
             mCurTransaction.add(container.getId(), fragment, makeFragmentName(container.getId(), itemId));
+            mFragments.put(itemId, fragment);
         }
         if (fragment != mCurrentPrimaryItem) {
             fragment.setMenuVisibility(false);
@@ -134,14 +230,196 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
     @Override
     public void destroyRelativeItem(ViewGroup container, int position, Object object) {
         if (mCurTransaction == null) {
-            mCurTransaction = mFragmentManager.beginTransaction();
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+
+        Fragment fragment = (Fragment) object;
+        // The state of the fragment is checked below, so it must be up to date.
+        mCommitScheduler.flush(fragment);
+        final int retention = retainRelativeItem(position, object);
+        if (retention == RetentionPolicy.DISCARD) {
+            mRetainedIds.remove(position);
+        } else {
+            mRetainedIds.put(position, getRelativeItemId(position));
+        }
+        if (retention == RetentionPolicy.DETACH) {
+            if (mViewRetentionLimit > 0 && !isReleased(object) && fragment.getView() != null) {
+                hideFragment(position, fragment);
+            } else if (!isReleased(object)) {
+                // A released fragment has already been detached.
+                mCurTransaction.detach(fragment);
+            }
+        } else {
+            final long itemId = getRelativeItemId(position);
+            if (retention == RetentionPolicy.SAVE_STATE) {
+                mSavedState.put(itemId, mFragmentManager.saveFragmentInstanceState(fragment));
+            }
+            if (mFragments.get(itemId) == fragment) {
+                mFragments.remove(itemId);
+            }
+            mCurTransaction.remove(fragment);
+        }
+    }
+
+    /**
+     * Remove a detached fragment demoted by the RetentionPolicy, keeping its saved state if asked.
+     */
+    @Override
+    protected void onRetentionChanged(int position, int retention) {
+        final Long retainedId = mRetainedIds.get(position);
+        final long itemId = retainedId != null ? retainedId : getRelativeItemId(position);
+        if (retention == RetentionPolicy.DISCARD) {
+            mSavedState.remove(itemId);
+            mRetainedIds.remove(position);
+        }
+        Fragment fragment = findFragment(itemId);
+        mCommitScheduler.flush(fragment);
+        if (fragment != null && mHiddenFragments.get(position) == fragment) {
+            mHiddenFragments.remove(position);
+        } else if (fragment == null || !fragment.isDetached()) {
+            return;
+        }
+        if (mCurTransaction == null) {
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+        if (retention == RetentionPolicy.SAVE_STATE) {
+            mSavedState.put(itemId, mFragmentManager.saveFragmentInstanceState(fragment));
+        }
+        mFragments.remove(itemId);
+        mCurTransaction.remove(fragment);
+    }
+
+    /**
+     * Move the item ids of the retained pages to their new positions, removing the detached
+     * fragments and saved states of the pages that were removed or changed.
+     */
+    @Override
+    protected void onRelativeUpdate(PageUpdate update) {
+        for (int x = 0; x < mRetainedIds.size(); x++) {
+            if (update.getNewPosition(mRetainedIds.keyAt(x)) == PageUpdate.NONE) {
+                final long itemId = mRetainedIds.valueAt(x);
+                mSavedState.remove(itemId);
+                Fragment fragment = findFragment(itemId);
+                mCommitScheduler.flush(fragment);
+                if (fragment != null && (fragment.isDetached() || mHiddenFragments.get(mRetainedIds.keyAt(x)) == fragment)) {
+                    if (mCurTransaction == null) {
+                        mCurTransaction = new FragmentOps<Fragment>();
+                    }
+                    mFragments.remove(itemId);
+                    mCurTransaction.remove(fragment);
+                }
+            }
+        }
+        mRetainedIds = movePositions(mRetainedIds, update);
+        mHiddenFragments = movePositions(mHiddenFragments, update);
+    }
+
+    /**
+     * <p>Set the number of detached pages nearest the current page whose fragment is kept attached
+     * with its view hidden, rather than detached, so the view does not need to be created again
+     * if the user turns back to the page. Other detached pages are detached as usual.</p>
+     *
+     * <p>The hidden views stay in the ViewPager and keep their memory, and their fragments stay
+     * resumed, so keep the limit low. Defaults to <tt>0</tt>, detaching every page.</p>
+     *
+     * @param limit The maximum number of hidden views.
+     * @see #getAvoidedInflationCount()
+     */
+    public void setViewRetentionLimit(int limit) {
+        mViewRetentionLimit = Math.max(limit, 0);
+        trimHiddenFragments();
+        finishUpdate(null);
+    }
+
+    /**
+     * @return The maximum number of detached pages whose view is kept hidden.
+     */
+    public int getViewRetentionLimit() {
+        return mViewRetentionLimit;
+    }
+
+    /**
+     * @return The number of pages shown again from their hidden view, without the view being
+     * created again.
+     */
+    public int getAvoidedInflationCount() {
+        return mAvoidedInflationCount;
+    }
+
+    /**
+     * Hide the view of a fragment no longer needed by the ViewPager instead of detaching it,
+     * detaching the fragment hidden furthest from the current page if there are too many.
+     *
+     * @param position The relative position of the page.
+     * @param fragment The fragment of the page.
+     */
+    private void hideFragment(int position, Fragment fragment) {
+        fragment.getView().setVisibility(View.GONE);
+        mHiddenFragments.put(position, fragment);
+        trimHiddenFragments();
+    }
+
+    /**
+     * Detach the fragments hidden furthest from the current page while there are too many.
+     */
+    private void trimHiddenFragments() {
+        final int count = getPageMapper().getRelativeCount();
+        final int primary = getPageMapper().getPrimaryPosition();
+        final int relativePrimary = primary >= 0 && count > 0 ? getRelativePosition(primary) : 0;
+        while (mHiddenFragments.size() > mViewRetentionLimit) {
+            int furthest = 0;
+            int furthestDistance = -1;
+            for (int x = 0; x < mHiddenFragments.size(); x++) {
+                int distance = Math.abs(mHiddenFragments.keyAt(x) - relativePrimary);
+                distance = Math.min(distance, count - distance);
+                if (distance > furthestDistance) {
+                    furthest = x;
+                    furthestDistance = distance;
+                }
+            }
+            if (mCurTransaction == null) {
+                mCurTransaction = new FragmentOps<Fragment>();
+            }
+            final Fragment fragment = mHiddenFragments.valueAt(furthest);
+            mHiddenFragments.removeAt(furthest);
+            mCurTransaction.detach(fragment);
+        }
+    }
+
+    @Override
+    protected long getRelativeItemSize(int position, Object object) {
+        return estimateViewSize(((Fragment) object).getView());
+    }
+
+    /**
+     * Detach the fragment, destroying its view hierarchy while keeping the fragment in the
+     * FragmentManager so it can be attached again once the user turns back towards it.
+     */
+    @Override
+    protected void releaseRelativeItem(ViewGroup container, int position, Object object) {
+        if (mCurTransaction == null) {
+            mCurTransaction = new FragmentOps<Fragment>();
         }
 
         mCurTransaction.detach((Fragment) object);
     }
 
+    @Override
+    protected void restoreRelativeItem(ViewGroup container, int position, Object object) {
+        if (mCurTransaction == null) {
+            mCurTransaction = new FragmentOps<Fragment>();
+        }
+
+        mCurTransaction.attach((Fragment) object);
+    }
+
     @Override
     public void setRelativePrimaryItem(ViewGroup container, int position, Object object) {
+        if (object != null && mCurrentPrimaryItem != null && mCurrentPrimaryItem.equals(object)) {
+            // We are already on the correct page.
+            return;
+        }
+
         if (mCurrentPrimaryItem != null) {
             mCurrentPrimaryItem.setMenuVisibility(false);
             mCurrentPrimaryItem.setUserVisibleHint(false);
@@ -158,23 +436,113 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
     @Override
     public void finishUpdate(ViewGroup container) {
         if (mCurTransaction != null) {
-            try {
-                mCurTransaction.commitAllowingStateLoss();
-                mCurTransaction = null;
-                mFragmentManager.executePendingTransactions();
-            } catch (Exception e) {
-                Log.e(TAG, e.getMessage(), e);
+            mCommitScheduler.commit(mCurTransaction, getPrimaryItem());
+            mCurTransaction = null;
+        }
+    }
+
+    /**
+     * Get the scheduler committing the changes to the fragments, to set whether the fragments of
+     * the pages next to the current page are created at once or later, and to measure the time
+     * taken.
+     *
+     * @return The scheduler committing the changes to the fragments.
+     * @see FragmentCommitScheduler#setMode(int)
+     */
+    public FragmentCommitScheduler<Fragment> getCommitScheduler() {
+        return mCommitScheduler;
+    }
+
+    /**
+     * Detach every hidden fragment at once, such as when the positions they are kept at are no
+     * longer known.
+     */
+    private void detachHiddenFragments() {
+        if (mHiddenFragments.size() > 0) {
+            if (mCurTransaction == null) {
+                mCurTransaction = new FragmentOps<Fragment>();
+            }
+            for (int x = 0; x < mHiddenFragments.size(); x++) {
+                mCurTransaction.detach(mHiddenFragments.valueAt(x));
             }
+            mHiddenFragments.clear();
+            finishUpdate(null);
+            // Executed before the pages are instantiated again, so an attach does not cancel it out.
+            mCommitScheduler.flush();
         }
     }
 
+    /**
+     * The pages may move when the data set changes, so the hidden fragments are detached rather
+     * than being left at positions that may now show other items.
+     */
+    @Override
+    protected void onPreNotifyDataSetChange() {
+        detachHiddenFragments();
+        super.onPreNotifyDataSetChange();
+    }
+
     @Override
     public Parcelable saveState() {
-        return null;
+        mCommitScheduler.flush();
+        // Restored fragments are attached, detach the hidden fragments so they stay hidden.
+        detachHiddenFragments();
+        Bundle state = null;
+        if (!mFragments.isEmpty() || !mRestoredIds.isEmpty()) {
+            // The FragmentManager restores the fragments, remember which to look for.
+            state = new Bundle();
+            long[] fragmentIds = new long[mFragments.size() + mRestoredIds.size()];
+            int x = 0;
+            for (Long id : mFragments.keySet()) {
+                fragmentIds[x++] = id;
+            }
+            for (Long id : mRestoredIds) {
+                fragmentIds[x++] = id;
+            }
+            state.putLongArray("fragmentIds", fragmentIds);
+        }
+        if (!mSavedState.isEmpty()) {
+            if (state == null) {
+                state = new Bundle();
+            }
+            long[] ids = new long[mSavedState.size()];
+            Fragment.SavedState[] fss = new Fragment.SavedState[mSavedState.size()];
+            int x = 0;
+            for (Long id : mSavedState.keySet()) {
+                ids[x] = id;
+                fss[x] = mSavedState.get(id);
+                x++;
+            }
+            state.putLongArray("ids", ids);
+            state.putParcelableArray("states", fss);
+        }
+        return state;
     }
 
     @Override
     public void restoreState(Parcelable state, ClassLoader loader) {
+        mSavedState.clear();
+        mRetainedIds.clear();
+        mFragments.clear();
+        mRestoredIds.clear();
+        mHiddenFragments.clear();
+        if (state != null) {
+            Bundle bundle = (Bundle) state;
+            bundle.setClassLoader(loader);
+            long[] fragmentIds = bundle.getLongArray("fragmentIds");
+            if (fragmentIds != null) {
+                for (long id : fragmentIds) {
+                    mRestoredIds.add(id);
+                }
+            }
+            long[] ids = bundle.getLongArray("ids");
+            Parcelable[] fss = bundle.getParcelableArray("states");
+            if (ids != null && fss != null) {
+                for (int x = 0; x < ids.length && x < fss.length; x++) {
+                    mSavedState.put(ids[x], (Fragment.SavedState) fss[x]);
+                }
+            }
+        }
     }
 
     /**
@@ -201,20 +569,9 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
         return getRelativeItem(getRelativePosition(position));
     }
 
-    @Override
-    public void setPrimaryItem(ViewGroup container, int position, Object object) {
-        if (object != null && mCurrentPrimaryItem != null && mCurrentPrimaryItem.equals(object)) {
-            // We are already on the correct page.
-            return;
-        }
-
-        super.setPrimaryItem(container, position, object);
-    }
-
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        final int margin = getMargin();
-        if (position < margin - 1 || position > getCount() + margin) {
+        if (!getPageMapper().isInstantiable(position, getPageMapper().getRelativeCount())) {
             return null;
         }
 
@@ -226,6 +583,24 @@ public abstract class InfiniteFragmentPagerAdapter extends InfinitePagerAdapter
         return object != null && ((Fragment) object).getView() == view;
     }
 
+    /**
+     * Find the fragment this adapter added for an item, looking it up by its tag only if it was
+     * restored by the FragmentManager and has not been looked up since.
+     *
+     * @param itemId The id of the item.
+     * @return The fragment attached or detached for the item, <code>null</code> if there is none.
+     */
+    private Fragment findFragment(long itemId) {
+        Fragment fragment = mFragments.get(itemId);
+        if (fragment == null && mRestoredIds.remove(itemId)) {
+            fragment = mFragmentManager.findFragmentByTag(makeFragmentName(mContainerId, itemId));
+            if (fragment != null) {
+                mFragments.put(itemId, fragment);
+            }
+        }
+        return fragment;
+    }
+
     /**
      * Create a unique name for the fragment so that it can be retrieved later.
      *